@@ -0,0 +1,94 @@
+package bguspl.set;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time of the game: every timeout, freeze, delay and pause of the game is measured and waited for with a clock.
+ *
+ * The real clock (SystemClock) follows the time of the system. A virtual clock (VirtualClock) moves only when every
+ * thread of the game waits on it, straight to the end of the earliest wait, so turn timeouts, freezes and reshuffles
+ * take no real time (e.g. in simulations and in tests). The threads of the game register with the clock for that
+ * (see register). Thread safe.
+ */
+public interface Clock {
+
+    /**
+     * Checks for something that may happen within some time, waiting for it up to a given number of real milliseconds.
+     * A virtual clock only checks without waiting, possibly on another thread while the waiting thread is parked, so
+     * the check should be safe to call from any thread.
+     *
+     * @param <T> - the type of the thing waited for.
+     */
+    @FunctionalInterface
+    interface TimedPoll<T> {
+
+        /**
+         * @param timeoutMillis - the number of real milliseconds to wait (0 to check without waiting, Long.MAX_VALUE to
+         *                      wait without a time limit).
+         * @return - the thing waited for, or null if it did not happen in time.
+         * @throws InterruptedException - if interrupted while waiting.
+         */
+        T poll(long timeoutMillis) throws InterruptedException;
+    }
+
+    /**
+     * @return - the current time in milliseconds. Never goes back, but only the difference between two times means
+     *           anything (it is not the time of day).
+     */
+    long currentTimeMillis();
+
+    /**
+     * Waits for some time to pass.
+     *
+     * @param millis - the number of milliseconds to wait (nothing is waited for if not positive).
+     * @throws InterruptedException - if interrupted while waiting.
+     */
+    void sleep(long millis) throws InterruptedException;
+
+    /**
+     * Lets the other threads of the game run for a moment (a thread that never waits on a virtual clock keeps it from
+     * moving, so it waits for the smallest step of the clock there).
+     *
+     * @throws InterruptedException - if interrupted while waiting.
+     */
+    void pause() throws InterruptedException;
+
+    /**
+     * Waits for something to happen, for some time at most.
+     *
+     * @param poll   - checks for the thing, waiting for it up to a given number of real milliseconds.
+     * @param millis - the number of milliseconds to wait at most (Long.MAX_VALUE to wait without a time limit).
+     * @param <T>    - the type of the thing waited for.
+     * @return - the thing waited for, or null if it did not happen in time (the time passed).
+     * @throws InterruptedException - if interrupted while waiting.
+     */
+    <T> T poll(TimedPoll<T> poll, long millis) throws InterruptedException;
+
+    /**
+     * Takes an element out of a queue, waiting for one for some time at most.
+     *
+     * @param queue  - the queue.
+     * @param millis - the number of milliseconds to wait at most.
+     * @param <T>    - the type of the elements.
+     * @return - the element taken out, or null if the queue stayed empty (the time passed).
+     * @throws InterruptedException - if interrupted while waiting.
+     */
+    default <T> T poll(BlockingQueue<T> queue, long millis) throws InterruptedException {
+        return poll(timeoutMillis -> queue.poll(timeoutMillis, TimeUnit.MILLISECONDS), millis);
+    }
+
+    /**
+     * Registers the calling thread as a thread of the game: a virtual clock does not move while the thread runs,
+     * only while it waits on the clock (sleep, pause or poll). Every wait of a registered thread should be on the
+     * clock, or the clock may never move.
+     */
+    default void register() {
+    }
+
+    /**
+     * Unregisters the calling thread (see register), e.g. when it is done.
+     */
+    default void unregister() {
+    }
+}
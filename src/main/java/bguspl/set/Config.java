@@ -21,6 +21,11 @@ public class Config {
     public final long randomSpinMin;
     public final long randomSpinMax;
 
+    /**
+     * The seed of the random numbers of the game (dealing cards, computer players' key presses), for reproducible runs
+     */
+    public final long randomSeed;
+
     /**
      * The number of features on the cards (e.g. shape, color etc.)
      */
@@ -36,6 +41,22 @@ public class Config {
      */
     public final int deckSize;
 
+    /**
+     * The number of threads looking for sets in large collections of cards, of sets of any size (0 for the number of
+     * processors, 1 for a sequential search)
+     */
+    public final int findSetsParallelism;
+
+    /**
+     * The minimal number of cards for which sets are looked for in parallel
+     */
+    public final int findSetsParallelThreshold;
+
+    /**
+     * Whether to compute the last card of a set from the other cards when looking for sets of more than 3 cards
+     */
+    public final boolean completeLastCard;
+
     /**
      * The number of human players in the game.
      */
@@ -66,6 +87,16 @@ public class Config {
      */
     public final long turnTimeoutWarningMillis;
 
+    /**
+     * The number of milliseconds between two updates of the turn countdown display (outside the warning period)
+     */
+    public final long turnTimeoutTickMillis;
+
+    /**
+     * The number of milliseconds between two updates of the turn countdown display during the warning period
+     */
+    public final long turnTimeoutWarningTickMillis;
+
     /**
      * The number of milliseconds a player gets frozen for when he scores a point
      */
@@ -136,6 +167,46 @@ public class Config {
      */
     public final int PauseAITime;
 
+    /**
+     * Whether to run the players and the AI key pressers on virtual threads (if the runtime supports them)
+     */
+    public final boolean virtualThreads;
+
+    /**
+     * The number of key presses each player can have waiting (rounded up to a power of 2)
+     */
+    public final int keyPressBufferSize;
+
+    /**
+     * What to do with a key press when the player already has keyPressBufferSize presses waiting: DROP_OLDEST,
+     * DROP_NEWEST or COALESCE (cancel a waiting press of the same key, or else drop the new press)
+     */
+    public final String keyPressOverflow;
+
+    /**
+     * Whether the dealer thread should apply the key presses of all players itself, instead of a thread for every
+     * player. The dealer is then the only thread changing the game: it changes the cards and the tokens without
+     * locks, checks every claim as soon as it is made, and sets the freezes. The countdown is already kept by the
+     * dealer. The other threads (the input, the freeze display, the hints, the user interface) only read the game
+     */
+    public final boolean singleWriterCore;
+
+    /**
+     * The number of games to play without a screen and without delays, as fast as possible (0 for a normal game)
+     */
+    public final int headlessGames;
+
+    /**
+     * Whether the headless games run on a virtual clock: the time needs not pass for real, so timeouts, freezes and
+     * table delays take no time (see VirtualClock)
+     */
+    public final boolean virtualClock;
+
+    /**
+     * The number of headless games played at the same time, each on its own threads (see Tournament)
+     */
+    public final int tournamentParallelism;
+
     /**
      * The scancodes of the keyboard input data for each player
      * Notes:
@@ -159,7 +230,7 @@ public class Config {
      * @param filename - the name of the configuration file.
      * @return - a properties object with the configuration file contents.
      */
-    private static Properties loadProperties(String filename, Logger logger) {
+    static Properties loadProperties(String filename, Logger logger) {
 
         Properties properties = new Properties();
 
@@ -196,21 +267,40 @@ public class Config {
         randomSpinMax = Long.parseLong(properties.getProperty("RandomSpinMax", "0"));
         if (randomSpinMax < randomSpinMin || randomSpinMin < 0)
             logger.severe("invalid random spin cycles: max: " + randomSpinMax + " min: " + randomSpinMin);
+        String seed = properties.getProperty("RandomSeed", "").trim();
+        randomSeed = seed.isEmpty() ? System.nanoTime() : Long.parseLong(seed);
+        logger.info("random seed: " + randomSeed);
 
         // cards settings
         featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
         deckSize = (int) Math.pow(featureSize, featureCount);
+        int parallelism = Integer.parseInt(properties.getProperty("FindSetsParallelism", "1"));
+        findSetsParallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        findSetsParallelThreshold = Integer.parseInt(properties.getProperty("FindSetsParallelThreshold", "243"));
+        completeLastCard = Boolean.parseBoolean(properties.getProperty("CompleteLastCard", "True"));
 
         // gameplay settings
         humanPlayers = Integer.parseInt(properties.getProperty("HumanPlayers", "2"));
         computerPlayers = Integer.parseInt(properties.getProperty("ComputerPlayers", "0"));
         players = humanPlayers + computerPlayers;
         PauseAITime = Integer.parseInt(properties.getProperty("PauseAITimes", "0"));
+        virtualThreads = Boolean.parseBoolean(properties.getProperty("VirtualThreads", "False"));
+        keyPressBufferSize = Integer.parseInt(properties.getProperty("KeyPressBufferSize", "3"));
+        keyPressOverflow = properties.getProperty("KeyPressOverflow", "DROP_NEWEST").trim().toUpperCase();
+        singleWriterCore = Boolean.parseBoolean(properties.getProperty("SingleWriterCore", "False"));
+        headlessGames = Integer.parseInt(properties.getProperty("HeadlessGames", "0"));
+        virtualClock = Boolean.parseBoolean(properties.getProperty("VirtualClock", "False"));
+        int gamesParallelism = Integer.parseInt(properties.getProperty("TournamentParallelism", "1"));
+        tournamentParallelism = gamesParallelism > 0 ? gamesParallelism : Runtime.getRuntime().availableProcessors();
+        if (virtualThreads && !GameThreads.virtualThreadsSupported())
+            logger.severe("warning: virtual threads are not supported by this java runtime, using platform threads.");
 
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) * 1000.0);
         turnTimeoutWarningMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutWarningSeconds", "60")) * 1000.0);
+        turnTimeoutTickMillis = Math.max(1, (long) (Double.parseDouble(properties.getProperty("TurnTimeoutTickSeconds", "1")) * 1000.0));
+        turnTimeoutWarningTickMillis = Math.max(1, (long) (Double.parseDouble(properties.getProperty("TurnTimeoutWarningTickSeconds", "0.01")) * 1000.0));
         pointFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PointFreezeSeconds", "1")) * 1000.0);
         penaltyFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PenaltyFreezeSeconds", "3")) * 1000.0);
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
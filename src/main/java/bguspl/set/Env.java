@@ -9,10 +9,30 @@ public class Env {
     public final UserInterface ui;
     public final Util util;
 
+    /**
+     * The random numbers of the game: every thread should split its own source from it (see RandomSource).
+     */
+    public final RandomSource random;
+
+    /**
+     * The time of the game: every timeout, freeze, delay and pause is measured and waited for with it (see Clock).
+     */
+    public final Clock clock;
+
     public Env(Logger logger, Config config, UserInterface ui, Util util) {
+        this(logger, config, ui, util, new RandomSourceImpl(config.randomSeed));
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, RandomSource random) {
+        this(logger, config, ui, util, random, new SystemClock());
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, RandomSource random, Clock clock) {
         this.logger = logger;
         this.config = config;
         this.ui = ui;
         this.util = util;
+        this.random = random;
+        this.clock = clock;
     }
 }
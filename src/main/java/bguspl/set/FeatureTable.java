@@ -0,0 +1,201 @@
+package bguspl.set;
+
+/**
+ * Precomputed features of every card in the deck, built once from the configuration.
+ *
+ * Every card gets its features as plain values (featureCount values between 0 and featureSize - 1) and, when they
+ * fit in a long, also packed as one-hot fields: feature i of the card sets one bit out of the featureSize bits of
+ * field i. Each field has one more (guard) bit above it that is always 0, so the fields of several cards can be
+ * combined with a few arithmetic/bitwise operations without one field spilling into the next.
+ */
+final class FeatureTable {
+
+    private final int featureCount;
+    private final int featureSize;
+
+    /**
+     * The features of all cards, card after card (the features of card c start at c * featureCount).
+     */
+    private final int[] values;
+
+    /**
+     * The one-hot packed features of all cards (null if featureCount * (featureSize + 1) > 64).
+     */
+    private final long[] masks;
+
+    /**
+     * The lowest bit of every field.
+     */
+    private final long lows;
+
+    /**
+     * The guard bit of every field.
+     */
+    private final long guards;
+
+    /**
+     * All the (non guard) bits of every field.
+     */
+    private final long fields;
+
+    /**
+     * The place value of each feature in a card id (the last feature is the least significant one).
+     */
+    private final int[] weights;
+
+    /**
+     * The missing value of a feature (indexed by first * 3 + second) in a set of three.
+     */
+    private static final int[] THIRD_VALUE = {0, 2, 1, 2, 1, 0, 1, 0, 2};
+
+    FeatureTable(Config config) {
+        featureCount = config.featureCount;
+        featureSize = config.featureSize;
+
+        weights = new int[featureCount];
+        for (int i = featureCount - 1, weight = 1; i >= 0; --i, weight *= featureSize)
+            weights[i] = weight;
+
+        values = new int[config.deckSize * featureCount];
+        for (int card = 0; card < config.deckSize; ++card)
+            for (int i = featureCount - 1, rest = card; i >= 0; --i, rest /= featureSize)
+                values[card * featureCount + i] = rest % featureSize;
+
+        int width = featureSize + 1;
+        if (featureCount * width <= Long.SIZE) {
+            long low = 0;
+            for (int i = 0; i < featureCount; ++i)
+                low |= 1L << (i * width);
+            lows = low;
+            guards = low << featureSize;
+            fields = guards - lows;
+
+            masks = new long[config.deckSize];
+            for (int card = 0; card < config.deckSize; ++card)
+                for (int i = 0; i < featureCount; ++i)
+                    masks[card] |= 1L << (i * width + values[card * featureCount + i]);
+        } else {
+            lows = guards = fields = 0;
+            masks = null;
+        }
+    }
+
+    /**
+     * @return - true iff the features of every card are packed in a long.
+     */
+    boolean isPacked() {
+        return masks != null;
+    }
+
+    /**
+     * @param card - the card id.
+     * @return - the one-hot packed features of the card.
+     */
+    long mask(int card) {
+        return masks[card];
+    }
+
+    /**
+     * @return - the guard bits of all fields (i.e. the fields of a packed mask that are all set).
+     */
+    long guards() {
+        return guards;
+    }
+
+    /**
+     * @param mask - packed features (or a combination of them).
+     * @return - the guard bits of the fields of the mask that are not 0.
+     */
+    long nonZeroFields(long mask) {
+        return (mask + fields) & guards;
+    }
+
+    /**
+     * @param guardBits - guard bits of some of the fields.
+     * @return - all the (non guard) bits of these fields.
+     */
+    long fieldBits(long guardBits) {
+        return guardBits - (guardBits >>> featureSize);
+    }
+
+    /**
+     * @param mask - one-hot packed features (exactly one bit set in every field).
+     * @return - the id of the card with these features.
+     */
+    int cardOf(long mask) {
+        int card = 0;
+        for (int i = 0; i < featureCount; ++i, mask >>>= featureSize + 1)
+            card += Long.numberOfTrailingZeros(mask) * weights[i];
+        return card;
+    }
+
+    /**
+     * Copies the features of a card into the given array.
+     *
+     * @param card     - the card id.
+     * @param features - an array of (at least) featureCount values.
+     */
+    void copyFeatures(int card, int[] features) {
+        System.arraycopy(values, card * featureCount, features, 0, featureCount);
+    }
+
+    /**
+     * Checks if the cards form a legal set (every feature is either the same on all cards or different on all cards).
+     * Does not allocate any memory.
+     *
+     * @param cards - the card ids.
+     * @return - true iff the cards form a legal set.
+     */
+    boolean isSet(int[] cards) {
+        if (masks != null && cards.length == featureSize && cards.length > 1) {
+            long or = 0, and = -1;
+            for (int card : cards) {
+                or |= masks[card];
+                and &= masks[card];
+            }
+            // a field that is not the same on all cards must have all its bits set (i.e. all values are different)
+            long notSame = nonZeroFields(or ^ and);
+            long allDifferent = (or + lows) & guards;
+            return (notSame & ~allDifferent) == 0;
+        }
+        if (cards.length == 0) return featureCount == 0;
+
+        for (int i = 0; i < featureCount; ++i) {
+            boolean sameSame = true, butDifferent = true;
+            int first = values[cards[0] * featureCount + i];
+
+            // check if this features is sameSame in all cards
+            for (int j = 1; j < cards.length; ++j)
+                if (first != values[cards[j] * featureCount + i]) {
+                    sameSame = false;
+                    break;
+                }
+
+            // check if this feature is butDifferent in all cards
+            for (int j = 1; j < cards.length && butDifferent; ++j)
+                for (int k = j; k < cards.length; ++k)
+                    if (values[cards[j - 1] * featureCount + i] == values[cards[k] * featureCount + i]) {
+                        butDifferent = false;
+                        break;
+                    }
+
+            if (sameSame == butDifferent) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Computes the card that completes two cards to a legal set of three cards (only valid when featureSize == 3):
+     * for each feature, the missing value is -(first + second) mod 3.
+     *
+     * @param first  - the first card id.
+     * @param second - the second card id.
+     * @return - the id of the third card.
+     */
+    int thirdCard(int first, int second) {
+        int third = 0;
+        for (int i = 0, f = first * featureCount, s = second * featureCount; i < featureCount; ++i)
+            third += THIRD_VALUE[values[f + i] * 3 + values[s + i]] * weights[i];
+        return third;
+    }
+}
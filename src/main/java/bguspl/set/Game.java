@@ -0,0 +1,111 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+/**
+ * One game: the table, the dealer and the players of an environment. A game holds no static state, so any number of
+ * games can be played at the same time (each with its own environment, see Tournament).
+ */
+public class Game {
+
+    /**
+     * The game environment object.
+     */
+    public final Env env;
+
+    /**
+     * Game entities.
+     */
+    private final Table table;
+    private final Dealer dealer;
+    private final Player[] players;
+
+    /**
+     * The thread playing the game (null before the game is played).
+     */
+    private volatile Thread thread;
+
+    /**
+     * True iff the game was terminated due to an external event.
+     */
+    private volatile boolean terminated;
+
+    /**
+     * @param env - the environment of the game (not shared with other games played at the same time).
+     */
+    public Game(Env env) {
+        this(env, new Player[env.config.players]);
+    }
+
+    /**
+     * @param env     - the environment of the game (not shared with other games played at the same time).
+     * @param players - the array to put the players of the game in (e.g. the one the user interface shows).
+     */
+    public Game(Env env, Player[] players) {
+        this.env = env;
+        this.players = players;
+        table = new Table(env);
+        dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
+    }
+
+    /**
+     * Plays the game: starts the dealer thread and waits until the game is over.
+     *
+     * @throws InterruptedException - if interrupted while waiting (e.g. by terminate).
+     */
+    public void play() throws InterruptedException {
+        thread = Thread.currentThread();
+        if (terminated)
+            return;
+        ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", env.logger);
+        dealerThread.startWithLog();
+        dealerThread.joinWithLog();
+    }
+
+    /**
+     * Called when the game should be terminated due to an external event: stops the dealer (and the players) and
+     * interrupts the thread playing the game.
+     */
+    public void terminate() {
+        terminated = true;
+        dealer.terminate();
+        Thread playing = thread;
+        if (playing != null)
+            playing.interrupt();
+    }
+
+    /**
+     * @return - true iff the game was terminated due to an external event.
+     */
+    public boolean terminated() {
+        return terminated;
+    }
+
+    /**
+     * @return - the score of every player (a copy).
+     */
+    public int[] scores() {
+        int[] scores = new int[players.length];
+        for (int i = 0; i < players.length; i++)
+            scores[i] = players[i].score();
+        return scores;
+    }
+
+    /**
+     * @return - the number of set claims the dealer checked.
+     */
+    public long claimsChecked() {
+        return dealer.claimsChecked();
+    }
+
+    /**
+     * @return - the number of rounds the dealer started.
+     */
+    public long rounds() {
+        return dealer.rounds();
+    }
+}
@@ -0,0 +1,63 @@
+package bguspl.set;
+
+import java.lang.reflect.Method;
+
+/**
+ * Starts the threads of the game entities, either as platform threads or as virtual threads.
+ *
+ * Virtual threads are cheap enough to run thousands of players in one JVM. They need Java 21 or later at runtime,
+ * so they are created through reflection: on older runtimes platform threads are started instead.
+ */
+public final class GameThreads {
+
+    /**
+     * Thread.ofVirtual(), Thread.Builder.name(String) and Thread.Builder.start(Runnable) (all null if virtual threads
+     * are not supported by the runtime).
+     */
+    private static final Method OF_VIRTUAL, NAME, START;
+
+    static {
+        Method ofVirtual = null, name = null, start = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class);
+            start = builder.getMethod("start", Runnable.class);
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+        } catch (ClassNotFoundException | NoSuchMethodException ignored) {
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        START = start;
+    }
+
+    private GameThreads() {
+    }
+
+    /**
+     * @return - true iff the runtime supports virtual threads.
+     */
+    public static boolean virtualThreadsSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Starts a new thread.
+     *
+     * @param task    - the task of the thread.
+     * @param name    - the name of the thread.
+     * @param virtual - true iff the thread should be a virtual thread (if the runtime supports virtual threads).
+     * @return - the thread started.
+     */
+    public static Thread start(Runnable task, String name, boolean virtual) {
+        if (virtual && OF_VIRTUAL != null) {
+            try {
+                Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), name);
+                return (Thread) START.invoke(builder, task);
+            } catch (ReflectiveOperationException ignored) { // start a platform thread instead
+            }
+        }
+        Thread thread = new Thread(task, name);
+        thread.start();
+        return thread;
+    }
+}
@@ -1,8 +1,6 @@
 package bguspl.set;
 
-import bguspl.set.ex.Dealer;
 import bguspl.set.ex.Player;
-import bguspl.set.ex.Table;
 
 import java.io.File;
 import java.io.IOException;
@@ -10,6 +8,8 @@ import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.*;
 
 /**
@@ -17,18 +17,15 @@ import java.util.logging.*;
  */
 public class Main {
 
-    private static Dealer dealer;
-    private static Thread thread;
-
-    private static boolean xButtonPressed = false;
-    private static Logger logger;
-
-    public static void xButtonPressed() {
-        if (logger != null) logger.severe("exit button pressed");
-        xButtonPressed = true;
-        if (dealer != null) dealer.terminate();
-        thread.interrupt();
-        try { thread.join(); } catch (InterruptedException ignored) {}
+    /**
+     * Called when the game window is closed with the X button: terminates the game and waits for the main thread
+     * to finish.
+     */
+    private static void xButtonPressed(Logger logger, Game game, Thread mainThread) {
+        logger.severe("exit button pressed");
+        if (game != null) game.terminate();
+        mainThread.interrupt();
+        try { mainThread.join(); } catch (InterruptedException ignored) {}
     }
 
     /**
@@ -38,18 +35,24 @@ public class Main {
      */
     public static void main(String[] args) {
 
-        thread = Thread.currentThread();
+        Thread mainThread = Thread.currentThread();
 
         // create the game environment objects
-        logger = initLogger();
+        Logger logger = initLogger();
         ThreadLogger.logStart(logger, Thread.currentThread().getName());
-        Config config = new Config(logger, "config.properties");
+        Properties properties = Config.loadProperties("config.properties", logger);
+        Config config = new Config(logger, properties);
+        if (config.headlessGames > 0) {
+            playHeadless(logger, properties);
+            return;
+        }
         Util util = new UtilImpl(config);
 
         Player[] players = new Player[config.players];
+        AtomicReference<Game> game = new AtomicReference<>(); // created after the user interface
         UserInterface ui = null;
         try {
-            ui = new UserInterfaceSwing(logger, config, players);
+            ui = new UserInterfaceSwing(logger, config, players, () -> xButtonPressed(logger, game.get(), mainThread));
         } catch (UnsupportedOperationException | IllegalArgumentException e) {
             logger.severe("error creating swing user interface: " + e.getMessage());
             logger.severe("will try to run without user interface");
@@ -57,23 +60,19 @@ public class Main {
                 logger.severe("warning: running with human players with no user interface");
         }
         ui = new UserInterfaceDecorator(logger, util, ui);
+        if (config.singleWriterCore)
+            ui = new QueuedUserInterface(logger, ui); // the dealer never waits for the screen or the logs
 
-        Env env = new Env(logger, config, ui, util);
+        RandomSource random = new RandomSourceImpl(config.randomSeed);
+        Env env = new Env(logger, config, ui, util, random);
 
         // create the game entities
-        Table table = new Table(env);
-        dealer = new Dealer(env, table, players);
-        for (int i = 0; i < players.length; i++)
-            players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
-
-        // start the dealer thread
-        ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger);
-        dealerThread.startWithLog();
+        game.set(new Game(env, players));
 
         try {
-            // shutdown stuff
-            dealerThread.joinWithLog();
-            if (!xButtonPressed && config.endGamePauseMillies > 0) Thread.sleep(config.endGamePauseMillies);
+            // play the game, then shutdown stuff
+            game.get().play();
+            if (!game.get().terminated() && config.endGamePauseMillies > 0) Thread.sleep(config.endGamePauseMillies);
             env.ui.dispose();
         } catch (InterruptedException ignored) {
         } finally {
@@ -84,6 +83,44 @@ public class Main {
         }
     }
 
+    /**
+     * Plays a tournament of games of computer players, without a screen and without delays (no table delay, no
+     * freezes, no AI pauses, only SEVERE logs), several games at the same time, and reports the wins of every player
+     * and the games, sets and claims per second. On a virtual clock (VirtualClock) the delays, freezes and pauses are kept as
+     * configured, since they take no time.
+     *
+     * @param logger     - the logger.
+     * @param properties - the configuration (HeadlessGames is the number of games to play).
+     */
+    private static void playHeadless(Logger logger, Properties properties) {
+        Properties headless = new Properties();
+        headless.putAll(properties);
+        headless.setProperty("HumanPlayers", "0");
+        headless.setProperty("Hints", "False");
+        // no per-claim logs: the log file is shared by all the games and would slow them all down
+        Level logLevel = Level.parse(properties.getProperty("LogLevel", "ALL"));
+        if (logLevel.intValue() < Level.SEVERE.intValue())
+            headless.setProperty("LogLevel", Level.SEVERE.getName());
+        if (!Boolean.parseBoolean(properties.getProperty("VirtualClock", "False"))) {
+            headless.setProperty("TableDelaySeconds", "0");
+            headless.setProperty("PointFreezeSeconds", "0");
+            headless.setProperty("PenaltyFreezeSeconds", "0");
+            headless.setProperty("PauseAITimes", "0");
+        }
+        headless.setProperty("EndGamePauseSeconds", "0");
+        Config config = new Config(logger, headless);
+
+        try {
+            Tournament.Result result = new Tournament(logger, config).play(config.headlessGames);
+            logger.severe(result.toString());
+            System.out.println(result);
+        } catch (InterruptedException ignored) {
+        } finally {
+            ThreadLogger.logStop(logger, Thread.currentThread().getName());
+            for (Handler h : logger.getHandlers()) h.close();
+        }
+    }
+
     private static Logger initLogger() {
 
         //just to make our log file nicer :)
@@ -0,0 +1,122 @@
+package bguspl.set;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Logger;
+
+/**
+ * A user interface that hands every update to another user interface on a separate thread, in order. The thread
+ * making the updates (e.g. the dealer) never waits for the screen or for the logs.
+ */
+public class QueuedUserInterface implements UserInterface {
+
+    private final Logger logger;
+    private final UserInterface ui;
+
+    /**
+     * The updates waiting to be handed to ui, in order.
+     */
+    private final BlockingQueue<Runnable> updates = new LinkedBlockingQueue<>();
+
+    private final Thread thread;
+
+    public QueuedUserInterface(Logger logger, UserInterface ui) {
+        this.logger = logger;
+        this.ui = ui;
+        thread = new Thread(this::run, "ui-updates");
+        thread.setDaemon(true); // never keeps the game from ending
+        thread.start();
+    }
+
+    private void run() {
+        try {
+            while (true)
+                updates.take().run();
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        updates.add(() -> ui.placeCard(card, slot));
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        updates.add(() -> ui.removeCard(slot));
+    }
+
+    @Override
+    public void placeCards(int[] cards, int[] slots) {
+        int[] cardsCopy = cards.clone(), slotsCopy = slots.clone();
+        updates.add(() -> ui.placeCards(cardsCopy, slotsCopy));
+    }
+
+    @Override
+    public void removeCards(int[] slots) {
+        int[] slotsCopy = slots.clone();
+        updates.add(() -> ui.removeCards(slotsCopy));
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        updates.add(() -> ui.placeToken(player, slot));
+    }
+
+    @Override
+    public void removeTokens() {
+        updates.add(ui::removeTokens);
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        updates.add(() -> ui.removeTokens(slot));
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        updates.add(() -> ui.removeToken(player, slot));
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        updates.add(() -> ui.setCountdown(millies, warn));
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        updates.add(() -> ui.setElapsed(millies));
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        updates.add(() -> ui.setFreeze(player, millies));
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        updates.add(() -> ui.setScore(player, score));
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        int[] playersCopy = players.clone();
+        updates.add(() -> ui.announceWinner(playersCopy));
+    }
+
+    /**
+     * Hands all the waiting updates to ui, and then disposes it.
+     */
+    @Override
+    public void dispose() {
+        updates.add(() -> {
+            ui.dispose();
+            thread.interrupt(); // the last update
+        });
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            logger.severe("interrupted while waiting for the user interface updates.");
+        }
+    }
+}
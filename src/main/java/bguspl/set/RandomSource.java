@@ -0,0 +1,23 @@
+package bguspl.set;
+
+/**
+ * A source of random numbers for the game (e.g. for dealing cards and for the key presses of computer players).
+ *
+ * A source is not thread safe: every thread should get its own source by splitting another one. Sources split (in the
+ * same order) from a source created with the same seed produce the same numbers, so a game can be reproduced.
+ */
+public interface RandomSource {
+
+    /**
+     * @param bound - the upper bound (exclusive), must be positive.
+     * @return - a random number between 0 (inclusive) and bound (exclusive).
+     */
+    int nextInt(int bound);
+
+    /**
+     * Creates a new source, independent of this one, for another thread. Thread safe.
+     *
+     * @return - the new source.
+     */
+    RandomSource split();
+}
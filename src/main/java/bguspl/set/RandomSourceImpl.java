@@ -0,0 +1,32 @@
+package bguspl.set;
+
+import java.util.SplittableRandom;
+
+/**
+ * The implementation of the RandomSource interface (based on SplittableRandom).
+ */
+public class RandomSourceImpl implements RandomSource {
+
+    private final SplittableRandom random;
+
+    /**
+     * @param seed - the seed (sources created with the same seed produce the same numbers).
+     */
+    public RandomSourceImpl(long seed) {
+        this(new SplittableRandom(seed));
+    }
+
+    private RandomSourceImpl(SplittableRandom random) {
+        this.random = random;
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+
+    @Override
+    public synchronized RandomSource split() {
+        return new RandomSourceImpl(random.split());
+    }
+}
@@ -0,0 +1,24 @@
+package bguspl.set;
+
+import java.util.Spliterator;
+
+/**
+ * A lazy cursor over the legal sets in a collection of cards. Sets are looked for only when the consumer asks for
+ * the next one, in the same order findSets returns them.
+ *
+ * The cursor is also a Spliterator, so it can be turned into a (parallel) stream: tryAdvance hands every set in a
+ * new array, and trySplit splits the remaining sets between two cursors.
+ */
+public interface SetCursor extends Spliterator<int[]> {
+
+    /**
+     * Finds the next set and copies its cards (sorted) into the given array. Does not allocate any memory.
+     *
+     * @param set - an array of (at least) config.featureSize cards the set is copied into.
+     * @return - false iff there are no more sets.
+     */
+    boolean next(int[] set);
+
+    @Override
+    SetCursor trySplit();
+}
@@ -0,0 +1,178 @@
+package bguspl.set;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A depth first search for sets of any size in a collection of cards.
+ *
+ * The cards of a set are chosen one by one, in the order of the collection, and a partial selection is dropped as
+ * soon as one of its features is neither the same on all the chosen cards nor different on all of them (no card
+ * added later can fix that). Optionally, the last card of a set is not searched for but computed directly from the
+ * other cards: for every feature it is either the value all of them have or the one value none of them has.
+ *
+ * The search can be stopped and resumed: each call to next finds the next set, in the same (lexicographic) order as
+ * going over all the combinations of cards would. Splitting the search hands the sets starting with the first half
+ * of the remaining first cards to a new search.
+ */
+final class SetSearch implements SetCursor {
+
+    private final FeatureTable features;
+    private final int setSize;
+    private final boolean completeLast;
+
+    /**
+     * The cards to look for sets in.
+     */
+    private final int[] cards;
+
+    /**
+     * 1 + the index of each card in cards (0 if the card is not in the collection).
+     */
+    private final int[] position;
+
+    /**
+     * The index (in cards) after the last first card of a set to look for.
+     */
+    private int end;
+
+    /**
+     * The current partial selection: the indices of the chosen cards, and for every prefix of the selection, the
+     * bitwise or/and of the packed features of its cards and the fields that are the same/different on all of them.
+     */
+    private final int[] chosen;
+    private final long[] or, and, same, different;
+
+    /**
+     * The index in chosen of the card to change next.
+     */
+    private int depth;
+
+    /**
+     * @param features     - the features of the cards (must be packed).
+     * @param setSize      - the number of cards in a set (config.featureSize).
+     * @param completeLast - true iff the last card of a set should be computed from the other cards.
+     * @param cards        - the cards to look for sets in.
+     * @param position     - 1 + the index of each card in cards (0 if the card is not in cards).
+     * @param start        - the index of the first card (in cards) sets may start with.
+     * @param end          - the index after the last card (in cards) sets may start with.
+     */
+    SetSearch(FeatureTable features, int setSize, boolean completeLast, int[] cards, int[] position,
+              int start, int end) {
+        this.features = features;
+        this.setSize = setSize;
+        this.completeLast = completeLast && setSize > 2;
+        this.cards = cards;
+        this.position = position;
+        this.end = end;
+        chosen = new int[setSize];
+        or = new long[setSize];
+        and = new long[setSize];
+        same = new long[setSize];
+        different = new long[setSize];
+        chosen[0] = start - 1;
+    }
+
+    /**
+     * Copies the state of another search, up to a new end.
+     */
+    private SetSearch(SetSearch search, int end) {
+        features = search.features;
+        setSize = search.setSize;
+        completeLast = search.completeLast;
+        cards = search.cards;
+        position = search.position;
+        this.end = end;
+        chosen = search.chosen.clone();
+        or = search.or.clone();
+        and = search.and.clone();
+        same = search.same.clone();
+        different = search.different.clone();
+        depth = search.depth;
+    }
+
+    @Override
+    public boolean next(int[] set) {
+        if (setSize == 0) return false;
+        while (true) {
+            int d = depth;
+            int index = ++chosen[d];
+            if (index > cards.length - setSize + d || (d == 0 && index >= end)) { // no room for the rest of the set
+                if (d == 0) {
+                    chosen[0] = end; // stay exhausted
+                    return false;
+                }
+                --depth;
+                continue;
+            }
+
+            long mask = features.mask(cards[index]);
+            if (d == 0) {
+                or[0] = and[0] = mask;
+                same[0] = different[0] = features.guards();
+            } else {
+                same[d] = same[d - 1] & features.nonZeroFields(and[d - 1] & mask);
+                different[d] = different[d - 1] & ~features.nonZeroFields(or[d - 1] & mask);
+                if ((same[d] | different[d]) != features.guards()) continue; // cannot become a set
+                or[d] = or[d - 1] | mask;
+                and[d] = and[d - 1] & mask;
+            }
+
+            if (d == setSize - 1) {
+                copySet(set, -1);
+                return true;
+            }
+
+            if (completeLast && d == setSize - 2) {
+                long last = (or[d] & features.fieldBits(same[d]))
+                        | (~or[d] & features.fieldBits(different[d] & ~same[d]));
+                int card = features.cardOf(last);
+                if (position[card] - 1 > index) { // the last card comes after the others, so the set is found once
+                    copySet(set, card);
+                    return true;
+                }
+                continue;
+            }
+
+            chosen[++depth] = index;
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super int[]> action) {
+        int[] set = new int[setSize];
+        if (!next(set)) return false;
+        action.accept(set);
+        return true;
+    }
+
+    @Override
+    public SetCursor trySplit() {
+        int from = chosen[0] + 1; // the first cards that were not tried yet
+        int middle = (from + end) >>> 1;
+        if (middle <= from) return null;
+        SetSearch prefix = new SetSearch(this, middle);
+        chosen[0] = middle - 1;
+        depth = 0;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | DISTINCT | NONNULL | IMMUTABLE;
+    }
+
+    private void copySet(int[] set, int last) {
+        int size = last < 0 ? setSize : setSize - 1;
+        for (int i = 0; i < size; ++i)
+            set[i] = cards[chosen[i]];
+        if (last >= 0)
+            set[size] = last;
+        Arrays.sort(set, 0, setSize);
+    }
+}
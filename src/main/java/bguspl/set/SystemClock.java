@@ -0,0 +1,36 @@
+package bguspl.set;
+
+/**
+ * The real clock of the game: follows System.nanoTime(), so it never goes back (even if the time of day of the system
+ * is changed), and really waits.
+ */
+public class SystemClock implements Clock {
+
+    /**
+     * The system time the clock was created at (the clock starts at 0).
+     */
+    private final long originNanos = System.nanoTime();
+
+    @Override
+    public long currentTimeMillis() {
+        return (System.nanoTime() - originNanos) / 1_000_000;
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        if (millis > 0)
+            Thread.sleep(millis);
+        else if (Thread.interrupted())
+            throw new InterruptedException();
+    }
+
+    @Override
+    public void pause() {
+        Thread.yield();
+    }
+
+    @Override
+    public <T> T poll(TimedPoll<T> poll, long millis) throws InterruptedException {
+        return poll.poll(Math.max(0, millis));
+    }
+}
@@ -0,0 +1,221 @@
+package bguspl.set;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Plays many games of computer players without a screen, several at the same time, and aggregates the results: the
+ * wins of every player and the games, sets and claims per second.
+ *
+ * Every game gets its own environment (its own random numbers split from the tournament's, its own clock and its own
+ * user interface), so the games are independent. At most config.tournamentParallelism games are played at the same
+ * time, on as many threads: a new game is started whenever one is over.
+ */
+public class Tournament {
+
+    /**
+     * The results of a tournament.
+     */
+    public static final class Result {
+
+        /**
+         * The number of games played to their end.
+         */
+        public final int games;
+
+        /**
+         * The number of seconds the tournament took.
+         */
+        public final double seconds;
+
+        /**
+         * The number of sets found (points scored) and of claims checked in all the games.
+         */
+        public final long sets, claims;
+
+        /**
+         * The number of rounds (from dealing the cards to the next reshuffle) in all the games.
+         */
+        public final long rounds;
+
+        /**
+         * The number of games every player won (a player with the highest score wins, ties are won by all) and the
+         * total score of every player.
+         */
+        private final long[] wins, scores;
+
+        private Result(int games, double seconds, long sets, long claims, long rounds, long[] wins, long[] scores) {
+            this.games = games;
+            this.seconds = seconds;
+            this.sets = sets;
+            this.claims = claims;
+            this.rounds = rounds;
+            this.wins = wins;
+            this.scores = scores;
+        }
+
+        /**
+         * @param player - the player id.
+         * @return - the number of games the player won.
+         */
+        public long wins(int player) {
+            return wins[player];
+        }
+
+        /**
+         * @param player - the player id.
+         * @return - the part of the games the player won (between 0 and 1).
+         */
+        public double winRate(int player) {
+            return games == 0 ? 0 : (double) wins[player] / games;
+        }
+
+        /**
+         * @param player - the player id.
+         * @return - the average score of the player in a game.
+         */
+        public double averageScore(int player) {
+            return games == 0 ? 0 : (double) scores[player] / games;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format(
+                    "Played %d games in %.3f seconds: %.2f games/sec, %.1f sets/sec, %.1f claims/sec, %.1f rounds per game",
+                    games, seconds, games / seconds, sets / seconds, claims / seconds, games == 0 ? 0 : (double) rounds / games));
+            for (int player = 0; player < wins.length; player++)
+                sb.append(System.lineSeparator()).append(String.format("Player %d won %d games (%.1f%%), %.2f points per game",
+                        player + 1, wins[player], 100 * winRate(player), averageScore(player)));
+            return sb.toString();
+        }
+    }
+
+    private final Logger logger;
+    private final Config config;
+    private final Util util;
+
+    /**
+     * The random numbers of the tournament: every game splits its own source from it, in the order the games start.
+     */
+    private final RandomSource random;
+
+    /**
+     * The games being played.
+     */
+    private final Set<Game> playing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * True iff the tournament should be terminated due to an external event.
+     */
+    private volatile boolean terminate;
+
+    /**
+     * @param logger - the logger (shared by all the games).
+     * @param config - the configuration of the games (the players should all be computer players).
+     */
+    public Tournament(Logger logger, Config config) {
+        this.logger = logger;
+        this.config = config;
+        this.util = new UtilImpl(config);
+        this.random = new RandomSourceImpl(config.randomSeed);
+    }
+
+    /**
+     * Plays the games and waits until they are all over.
+     *
+     * @param games - the number of games to play.
+     * @return - the results of the games played to their end.
+     * @throws InterruptedException - if interrupted while waiting (the games being played are terminated).
+     */
+    public Result play(int games) throws InterruptedException {
+        long[] wins = new long[config.players];
+        long[] scores = new long[config.players];
+        long sets = 0, claims = 0, rounds = 0;
+        int played = 0;
+
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(config.tournamentParallelism, task -> {
+            Thread thread = new Thread(task, "game-" + threads.incrementAndGet());
+            thread.setDaemon(true); // never keeps the program from ending
+            return thread;
+        });
+        CompletionService<Game> done = new ExecutorCompletionService<>(executor);
+        long start = System.nanoTime();
+        try {
+            int started = 0, over = 0;
+            for (; started < Math.min(games, config.tournamentParallelism); started++)
+                done.submit(newGame());
+            while (over < started) {
+                Game game;
+                try {
+                    game = done.take().get();
+                } catch (ExecutionException e) {
+                    logger.severe("a game of the tournament failed: " + e.getCause());
+                    game = null;
+                }
+                over++;
+                if (started < games && !terminate) {
+                    done.submit(newGame()); // keeps the threads busy
+                    started++;
+                }
+                if (game == null || game.terminated())
+                    continue;
+
+                int[] gameScores = game.scores();
+                int max = 0;
+                for (int score : gameScores)
+                    max = Math.max(max, score);
+                for (int player = 0; player < gameScores.length; player++) {
+                    scores[player] += gameScores[player];
+                    sets += gameScores[player];
+                    if (gameScores[player] == max)
+                        wins[player]++;
+                }
+                claims += game.claimsChecked();
+                rounds += game.rounds();
+                played++;
+            }
+        } finally {
+            terminate();
+            executor.shutdownNow();
+        }
+        return new Result(played, (System.nanoTime() - start) / 1e9, sets, claims, rounds, wins, scores);
+    }
+
+    /**
+     * Called when the tournament should be terminated due to an external event: no more games are started, and the
+     * games being played are terminated.
+     */
+    public void terminate() {
+        terminate = true;
+        for (Game game : playing)
+            game.terminate();
+    }
+
+    /**
+     * @return - a task playing a new game, in a new environment.
+     */
+    private Callable<Game> newGame() {
+        Clock clock = config.virtualClock ? new VirtualClock() : new SystemClock();
+        Env env = new Env(logger, config, new HeadlessUserInterface(), util, random.split(), clock);
+        return () -> {
+            Game game = new Game(env);
+            playing.add(game);
+            try {
+                if (!terminate)
+                    game.play();
+            } finally {
+                playing.remove(game);
+            }
+            return game;
+        };
+    }
+}
@@ -18,6 +18,28 @@ public interface UserInterface {
      */
     void removeCard(int slot);
 
+    /**
+     * Draw the card images corresponding to the card ids in the specified slots, repainting the table once.
+     * @param cards - the card ids.
+     * @param slots - the slot numbers (cards[i] is drawn in slots[i]).
+     */
+    default void placeCards(int[] cards, int[] slots) {
+        for (int i = 0; i < cards.length; i++)
+            placeCard(cards[i], slots[i]);
+    }
+
+    /**
+     * Draw empty card images in the specified slots and remove the players names text from them, repainting the
+     * table once.
+     * @param slots - the slot numbers.
+     */
+    default void removeCards(int[] slots) {
+        for (int slot : slots) {
+            removeTokens(slot);
+            removeCard(slot);
+        }
+    }
+
     /**
      * Draw a player name text in the specified slot.
      * @param player - the card id.
@@ -28,7 +28,7 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         return format("%" + padding + "s", Integer.toString(n, base)).replace(' ', '0');
     }
 
-    public UserInterfaceSwing(Logger logger, Config config, Player[] players) {
+    public UserInterfaceSwing(Logger logger, Config config, Player[] players, Runnable onClose) {
 
         this.config = config;
         timerPanel = new TimerPanel();
@@ -64,7 +64,7 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
         addKeyListener(new InputManager(logger, config, players));
-        addWindowListener(new WindowManager());
+        addWindowListener(new WindowManager(onClose));
 
         EventQueue.invokeLater(() -> setVisible(true));
     }
@@ -156,6 +156,13 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             repaint();
         }
 
+        private void placeCards(int[] slots, int[] cards) {
+            for (int i = 0; i < slots.length; i++)
+                grid[slots[i] / config.columns][slots[i] % config.columns] = deck[cards[i]];
+            validate();
+            repaint();
+        }
+
         private void removeCard(int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
@@ -164,6 +171,15 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             repaint();
         }
 
+        private void removeCards(int[] slots) {
+            for (int slot : slots) {
+                removeTokens(slot);
+                grid[slot / config.columns][slot % config.columns] = emptyCard;
+            }
+            validate();
+            repaint();
+        }
+
         private void placeToken(int player, int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
@@ -284,6 +300,16 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         gamePanel.removeCard(slot);
     }
 
+    @Override
+    public void placeCards(int[] cards, int[] slots) {
+        gamePanel.placeCards(slots, cards);
+    }
+
+    @Override
+    public void removeCards(int[] slots) {
+        gamePanel.removeCards(slots);
+    }
+
     @Override
     public void placeToken(int player, int slot) {
         gamePanel.placeToken(player, slot);
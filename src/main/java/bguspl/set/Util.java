@@ -1,6 +1,8 @@
 package bguspl.set;
 
 import java.util.List;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * An interface for general utilities provided for convenience.
@@ -31,6 +33,16 @@ public interface Util {
      */
     boolean testSet(int[] cards);
 
+    /**
+     * Computes the card that completes two cards to a legal set of three cards.
+     *
+     * @param first  - the first card id.
+     * @param second - the second card id.
+     * @return - the id of the (only) card forming a legal set with the two cards, or -1 if sets are not of 3 cards
+     *           (i.e. config.featureSize != 3).
+     */
+    int thirdCard(int first, int second);
+
     /**
      * Finds and returns up to count sets in the given collection of cards.
      *
@@ -40,6 +52,52 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * Counts the sets in the given cards (without allocating memory when sets are of three cards).
+     *
+     * @param cards - an array of card ids (without duplicates).
+     * @return - the number of legal sets among the cards.
+     */
+    int countSets(int[] cards);
+
+    /**
+     * Counts the sets in the given cards (without allocating memory when sets are of three cards).
+     *
+     * @param cardBits - a bitmask of card ids (card c is included iff bit c % 64 of cardBits[c / 64] is set; it may be
+     *                 shorter than the deck, the cards past its end are not included).
+     * @return - the number of legal sets among the cards.
+     */
+    int countSets(long[] cardBits);
+
+    /**
+     * Counts the sets in the given cards, and the sets each card is part of.
+     *
+     * @param cardBits - a bitmask of card ids (see countSets).
+     * @param perCard  - an array of config.deckSize counters to fill with the number of sets each card is part of.
+     * @return - the number of legal sets among the cards.
+     */
+    int countSetsPerCard(long[] cardBits, int[] perCard);
+
+    /**
+     * Creates a lazy cursor over the sets in the given collection of cards: sets are looked for only when they are
+     * asked for, in the same order findSets returns them.
+     *
+     * @param deck - a collection of cards (may not include null objects).
+     * @return - a cursor over the sets in the collection.
+     */
+    SetCursor setCursor(List<Integer> deck);
+
+    /**
+     * Streams the sets in the given collection of cards (see setCursor).
+     *
+     * @param deck     - a collection of cards (may not include null objects).
+     * @param parallel - true iff the stream should be a parallel stream.
+     * @return - a stream of integer arrays, each one contains the card ids of a legal set.
+     */
+    default Stream<int[]> streamSets(List<Integer> deck, boolean parallel) {
+        return StreamSupport.stream(setCursor(deck), parallel);
+    }
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
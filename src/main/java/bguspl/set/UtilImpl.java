@@ -1,9 +1,17 @@
 package bguspl.set;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 /**
@@ -13,59 +21,400 @@ public class UtilImpl implements Util {
 
     private final Config config;
 
+    /**
+     * The features of every card in the deck (computed once).
+     */
+    private final FeatureTable features;
+
+    /**
+     * The threads looking for sets in parallel (null if sets are looked for sequentially).
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * A bitmask of cards for each thread counting sets (kept clear between calls).
+     */
+    private final ThreadLocal<long[]> scratchBits;
+
+    /**
+     * The number of tasks per pool thread the search for sets is split into (for load balancing).
+     */
+    private static final int SPLITS_PER_THREAD = 8;
+
     public UtilImpl(Config config) {
         this.config = config;
-    }
-
-    private void cardToFeatures(int card, int[] features) {
-        for (int i = config.featureCount - 1; i >= 0; --i) {
-            features[i] = card % config.featureSize;
-            card /= config.featureSize;
-        }
+        this.features = new FeatureTable(config);
+        this.scratchBits = ThreadLocal.withInitial(() -> new long[(config.deckSize + Long.SIZE - 1) / Long.SIZE]);
+        this.pool = config.findSetsParallelism > 1 ? new ForkJoinPool(config.findSetsParallelism) : null;
     }
 
     @Override
     public int[] cardToFeatures(int card) {
-        int[] features = new int[config.featureCount];
-        cardToFeatures(card, features);
-        return features;
+        int[] cardFeatures = new int[config.featureCount];
+        features.copyFeatures(card, cardFeatures);
+        return cardFeatures;
     }
 
     @Override
     public int[][] cardsToFeatures(int[] cards) {
-        int[][] features = new int[cards.length][config.featureCount];
-        IntStream.range(0, cards.length).forEach(i -> cardToFeatures(cards[i], features[i]));
-        return features;
+        int[][] cardsFeatures = new int[cards.length][config.featureCount];
+        IntStream.range(0, cards.length).forEach(i -> features.copyFeatures(cards[i], cardsFeatures[i]));
+        return cardsFeatures;
     }
 
     @Override
     public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
-        for (int i = 0; i < config.featureCount; ++i) {
-            boolean sameSame = true, butDifferent = true;
-
-            // check if this features is sameSame in all cards
-            for (int j = 1; j < features.length; ++j)
-                if (features[0][i] != features[j][i]) {
-                    sameSame = false;
-                    break;
-                }
+        return features.isSet(cards);
+    }
+
+    @Override
+    public int thirdCard(int first, int second) {
+        return config.featureSize == 3 ? features.thirdCard(first, second) : -1;
+    }
+
+    @Override
+    public List<int[]> findSets(List<Integer> deck, int count) {
+        if (config.featureSize == 3) return findSetsByCompletion(deck, count);
+        if (features.isPacked()) return findSetsBySearch(deck, count);
+        return findSetsByCombination(deck, count);
+    }
+
+    @Override
+    public int countSets(int[] cards) {
+        if (config.featureSize != 3) return countSetsBySearch(cards, null);
+
+        long[] cardBits = scratchBits.get();
+        for (int card : cards)
+            cardBits[card >>> 6] |= 1L << card;
+        int sets = countSetsOfThree(cardBits, null);
+        for (int card : cards)
+            cardBits[card >>> 6] = 0;
+        return sets;
+    }
+
+    @Override
+    public int countSets(long[] cardBits) {
+        if (config.featureSize != 3) return countSetsBySearch(bitsToCards(cardBits), null);
+        return countSetsOfThree(cardBits, null);
+    }
+
+    @Override
+    public int countSetsPerCard(long[] cardBits, int[] perCard) {
+        Arrays.fill(perCard, 0);
+        if (config.featureSize != 3) return countSetsBySearch(bitsToCards(cardBits), perCard);
+        return countSetsOfThree(cardBits, perCard);
+    }
 
-            // check if this feature is butDifferent in all cards
-            for (int j = 1; j < features.length; ++j)
-                for (int k = j; k < features.length; ++k)
-                    if (features[j - 1][i] == features[k][i]) {
-                        butDifferent = false;
-                        break;
+    /**
+     * Counts the sets of three cards by completing every pair of cards in the bitmask (the words past its end are 0).
+     *
+     * @param perCard - if not null, the number of sets each card is part of is added to it.
+     */
+    private int countSetsOfThree(long[] cardBits, int[] perCard) {
+        int sets = 0;
+        for (int w = 0; w < cardBits.length; ++w)
+            for (long firsts = cardBits[w]; firsts != 0; firsts &= firsts - 1) {
+                int first = (w << 6) + Long.numberOfTrailingZeros(firsts);
+                for (int v = w; v < cardBits.length; ++v)
+                    for (long seconds = v == w ? firsts & (firsts - 1) : cardBits[v]; seconds != 0;
+                         seconds &= seconds - 1) {
+                        int second = (v << 6) + Long.numberOfTrailingZeros(seconds);
+                        int third = features.thirdCard(first, second);
+                        if (third > second && (third >>> 6) < cardBits.length
+                                && (cardBits[third >>> 6] & (1L << third)) != 0) {
+                            ++sets;
+                            if (perCard != null) {
+                                ++perCard[first];
+                                ++perCard[second];
+                                ++perCard[third];
+                            }
+                        }
                     }
+            }
+        return sets;
+    }
 
-            if (sameSame == butDifferent) return false;
+    /**
+     * Counts the sets of any size with the (pruned) search.
+     *
+     * @param perCard - if not null, the number of sets each card is part of is added to it.
+     */
+    private int countSetsBySearch(int[] cards, int[] perCard) {
+        SetCursor cursor = setCursor(Arrays.stream(cards).boxed().collect(Collectors.toList()));
+        int[] set = new int[config.featureSize];
+        int sets = 0;
+        while (cursor.next(set)) {
+            ++sets;
+            if (perCard != null)
+                for (int card : set)
+                    ++perCard[card];
         }
-        return true;
+        return sets;
+    }
+
+    private static int[] bitsToCards(long[] cardBits) {
+        return IntStream.range(0, cardBits.length << 6).filter(card -> (cardBits[card >>> 6] & (1L << card)) != 0)
+                .toArray();
     }
 
     @Override
-    public List<int[]> findSets(List<Integer> deck, int count) {
+    public SetCursor setCursor(List<Integer> deck) {
+        if (!features.isPacked()) return new ListCursor(findSetsByCombination(deck, Integer.MAX_VALUE));
+
+        int n = deck.size();
+        int[] cards = new int[n];
+        int[] position = new int[config.deckSize];
+        for (int i = 0; i < n; ++i) {
+            cards[i] = deck.get(i);
+            position[cards[i]] = i + 1;
+        }
+        return new SetSearch(features, config.featureSize, config.completeLastCard || config.featureSize == 3, cards,
+                position, 0, n);
+    }
+
+    /**
+     * A cursor over sets that were already found (for features that cannot be packed).
+     */
+    private static class ListCursor implements SetCursor {
+
+        private final Iterator<int[]> sets;
+
+        ListCursor(List<int[]> sets) {
+            this.sets = sets.iterator();
+        }
+
+        @Override
+        public boolean next(int[] set) {
+            if (!sets.hasNext()) return false;
+            int[] next = sets.next();
+            System.arraycopy(next, 0, set, 0, next.length);
+            return true;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super int[]> action) {
+            if (!sets.hasNext()) return false;
+            action.accept(sets.next());
+            return true;
+        }
+
+        @Override
+        public SetCursor trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | DISTINCT | NONNULL | IMMUTABLE;
+        }
+    }
+
+    /**
+     * Finds sets of any size with a search that drops partial selections of cards that cannot become a set.
+     * The sets are returned in the same order as the combination based search would return them.
+     */
+    private List<int[]> findSetsBySearch(List<Integer> deck, int count) {
+        int n = deck.size();
+        int[] cards = new int[n];
+        int[] position = new int[config.deckSize];
+        for (int i = 0; i < n; ++i) {
+            cards[i] = deck.get(i);
+            position[cards[i]] = i + 1;
+        }
+
+        if (pool != null && n >= config.findSetsParallelThreshold)
+            return new ParallelSearch(cards, position, count).invoke();
+
+        LinkedList<int[]> sets = new LinkedList<>();
+        addSetsBySearch(cards, position, 0, n, count, sets, null);
+        return sets;
+    }
+
+    /**
+     * Adds the sets whose first card (in the order of the deck) is one of cards[start] to cards[end - 1], found by
+     * the search, until there are count sets.
+     *
+     * @param cutoff - if not null, the search stops once the cutoff is lower than start.
+     * @return - false iff count sets were found.
+     */
+    private boolean addSetsBySearch(int[] cards, int[] position, int start, int end, int count, List<int[]> sets,
+                                    AtomicInteger cutoff) {
+        SetSearch search = new SetSearch(features, config.featureSize, config.completeLastCard, cards, position,
+                start, end);
+        int[] set = new int[config.featureSize];
+        while ((cutoff == null || cutoff.get() >= start) && search.next(set)) {
+            sets.add(set.clone());
+            if (sets.size() >= count) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Finds sets of three cards by going over every pair of cards and looking up the (unique) card completing them.
+     * The sets are returned in the same order as the combination based search would return them.
+     */
+    private List<int[]> findSetsByCompletion(List<Integer> deck, int count) {
+        int n = deck.size();
+        int[] cards = new int[n];
+        int[] position = new int[config.deckSize]; // 1 + the index of each card in the deck (0 if not in the deck)
+        for (int i = 0; i < n; ++i) {
+            cards[i] = deck.get(i);
+            position[cards[i]] = i + 1;
+        }
+
+        if (pool != null && n >= config.findSetsParallelThreshold)
+            return new ParallelSearch(cards, position, count).invoke();
+
+        LinkedList<int[]> sets = new LinkedList<>();
+        for (int i = 0; i < n - 2; ++i)
+            if (!addSetsStartingWith(cards, position, i, count, sets, null)) break;
+        return sets;
+    }
+
+    /**
+     * Adds the sets whose first card (in the order of the deck) is cards[first] until there are count sets.
+     *
+     * @param cutoff - if not null, the search stops once the cutoff is lower than first.
+     * @return - false iff count sets were found.
+     */
+    private boolean addSetsStartingWith(int[] cards, int[] position, int first, int count, List<int[]> sets,
+                                        AtomicInteger cutoff) {
+        for (int j = first + 1; j < cards.length - 1; ++j) {
+            if (cutoff != null && cutoff.get() < first) return true;
+            int third = features.thirdCard(cards[first], cards[j]);
+            if (position[third] > j + 1) { // the third card comes after the pair, so this set is counted once
+                int[] set = {cards[first], cards[j], third};
+                Arrays.sort(set);
+                sets.add(set);
+                if (sets.size() >= count) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Looks for sets on the pool threads: sets of three cards by completing pairs, larger sets with the search (one
+     * search per first card). The first cards of the sets are split between the tasks
+     * and the sets found are merged in the order of their first card, so the result is the same as the result of
+     * the sequential search. Once count sets start with the first cards up to some first card (all the sets of
+     * these first cards were found), the sets starting with later first cards are not needed anymore, and the tasks
+     * looking for them stop.
+     */
+    private class ParallelSearch {
+
+        private final int[] cards;
+        private final int[] position;
+        private final int count;
+
+        /**
+         * The sets found, by their first card.
+         */
+        private final List<List<int[]>> found;
+
+        /**
+         * The last first card that may still be part of the result.
+         */
+        private final AtomicInteger cutoff;
+
+        /**
+         * The number of cards sets may start with (the last card of the deck starting a set is cards[firsts - 1]).
+         */
+        private final int firsts;
+
+        /**
+         * The number of first cards each task goes over without splitting.
+         */
+        private final int grain;
+
+        /**
+         * The number of sets starting with each first card, once all of them were found (-1 before). Guarded by this.
+         */
+        private final int[] sizes;
+
+        /**
+         * The number of first cards (from the first one) whose sets were all found, and the number of these sets.
+         * Guarded by this.
+         */
+        private int prefix, prefixSets;
+
+        ParallelSearch(int[] cards, int[] position, int count) {
+            this.cards = cards;
+            this.position = position;
+            this.count = count;
+            found = new ArrayList<>(Collections.nCopies(cards.length, null));
+            cutoff = new AtomicInteger(cards.length);
+            firsts = Math.max(0, cards.length - (config.featureSize - 1));
+            grain = Math.max(1, cards.length / (pool.getParallelism() * SPLITS_PER_THREAD));
+            sizes = new int[firsts];
+            Arrays.fill(sizes, -1);
+        }
+
+        /**
+         * Called when all the sets starting with a first card were found (or count of them): lowers the cutoff once
+         * the sets starting with the first cards up to some first card are count sets in total.
+         *
+         * @param first - the first card.
+         * @param size  - the number of sets starting with it.
+         */
+        private synchronized void completed(int first, int size) {
+            sizes[first] = size;
+            if (size >= count) // the sets starting with later first cards are not needed, whatever comes before
+                cutoff.accumulateAndGet(first, Math::min);
+            while (prefix < sizes.length && sizes[prefix] >= 0 && prefixSets < count)
+                prefixSets += sizes[prefix++];
+            if (prefixSets >= count)
+                cutoff.accumulateAndGet(prefix - 1, Math::min);
+        }
+
+        List<int[]> invoke() {
+            pool.invoke(new Task(0, firsts));
+
+            LinkedList<int[]> sets = new LinkedList<>();
+            for (int i = 0; i <= cutoff.get() && i < firsts; ++i)
+                for (int[] set : found.get(i)) {
+                    sets.add(set);
+                    if (sets.size() >= count) return sets;
+                }
+            return sets;
+        }
+
+        private class Task extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            private final int from, to;
+
+            Task(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > grain) {
+                    int middle = (from + to) >>> 1;
+                    invokeAll(new Task(from, middle), new Task(middle, to));
+                    return;
+                }
+                for (int i = from; i < to && i <= cutoff.get(); ++i) {
+                    List<int[]> sets = new ArrayList<>();
+                    found.set(i, sets);
+                    boolean more = config.featureSize == 3
+                            ? addSetsStartingWith(cards, position, i, count, sets, cutoff)
+                            : addSetsBySearch(cards, position, i, i + 1, count, sets, cutoff);
+                    if (!more || cutoff.get() >= i) // not stopped by the cutoff
+                        completed(i, sets.size());
+                }
+            }
+        }
+    }
+
+    private List<int[]> findSetsByCombination(List<Integer> deck, int count) {
         LinkedList<int[]> sets = new LinkedList<>();
         int n = deck.size();
         int r = config.featureSize;
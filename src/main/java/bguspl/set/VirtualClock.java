@@ -0,0 +1,298 @@
+package bguspl.set;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A clock that never waits for real: it moves only when every registered thread (see register) waits on it, and
+ * then straight to the end of the earliest wait. So the time passes as if every thread took no time to run, and
+ * turn timeouts, freezes and table delays take no real time. It can also be moved forward explicitly (e.g. by a
+ * test).
+ *
+ * A thread polling for something (see poll) may be given it by another thread without the clock knowing (e.g. a key
+ * press). So before the clock moves, it checks for every polling thread whether what it waits for is there, and if
+ * so hands it over and wakes up the thread instead of moving. Every waiting thread is parked on its own and woken up
+ * only when its wait is over, so no thread checks anything again and again. A thread that is not registered counts
+ * only while it waits on the clock (and what it is given is seen at the next check).
+ */
+public class VirtualClock implements Clock {
+
+    /**
+     * The smallest step of the clock (see pause).
+     */
+    public static final long STEP_MILLIS = 1;
+
+    /**
+     * A thread waiting on the clock.
+     */
+    private static final class Waiter {
+
+        final Thread thread = Thread.currentThread();
+
+        /**
+         * The time the wait ends (Long.MAX_VALUE if it has no time limit).
+         */
+        final long deadline;
+
+        /**
+         * Orders the waiters with the same deadline (in the order they started to wait).
+         */
+        final long order;
+
+        /**
+         * Checks for what the thread waits for (null if it just sleeps).
+         */
+        final TimedPoll<?> poll;
+
+        /**
+         * True iff the thread is registered (so it runs again once the wait is over).
+         */
+        final boolean registered;
+
+        /**
+         * What the thread waited for (null if the time passed), set when the wait is over.
+         */
+        Object result;
+
+        volatile boolean over;
+
+        Waiter(long deadline, long order, TimedPoll<?> poll, boolean registered) {
+            this.deadline = deadline;
+            this.order = order;
+            this.poll = poll;
+            this.registered = registered;
+        }
+    }
+
+    /**
+     * Guards the state of the clock below (the time is also volatile, so it can be read without the lock). Not a
+     * monitor, so a virtual thread waiting on the clock does not pin its carrier thread.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile long now;
+
+    /**
+     * The registered threads, and the number of them not waiting on the clock.
+     */
+    private final Set<Thread> registered = new HashSet<>();
+    private int running;
+
+    /**
+     * The waiting threads, by the time their wait ends, and the ones polling for something.
+     */
+    private final TreeSet<Waiter> waiters = new TreeSet<>((a, b) -> a.deadline != b.deadline
+            ? Long.compare(a.deadline, b.deadline) : Long.compare(a.order, b.order));
+    private final Set<Waiter> polling = new LinkedHashSet<>();
+
+    /**
+     * The number of waits started so far (see Waiter.order).
+     */
+    private long waits;
+
+    /**
+     * Creates a clock starting at 0.
+     */
+    public VirtualClock() {
+        this(0);
+    }
+
+    /**
+     * @param startMillis - the time the clock starts at.
+     */
+    public VirtualClock(long startMillis) {
+        now = startMillis;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    @Override
+    public void register() {
+        lock.lock();
+        try {
+            if (registered.add(Thread.currentThread()))
+                running++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void unregister() {
+        lock.lock();
+        try {
+            if (registered.remove(Thread.currentThread())) {
+                running--;
+                tryAdvance();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        if (millis > 0)
+            await(millis, null);
+    }
+
+    @Override
+    public void pause() throws InterruptedException {
+        sleep(STEP_MILLIS);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T poll(TimedPoll<T> poll, long millis) throws InterruptedException {
+        T found = poll.poll(0); // checks without waiting
+        if (found != null || millis <= 0)
+            return found;
+        return (T) await(millis, poll);
+    }
+
+    /**
+     * Moves the clock forward.
+     *
+     * @param millis - the number of milliseconds to move the clock forward by (nothing is done if not positive).
+     */
+    public void advance(long millis) {
+        lock.lock();
+        try {
+            if (millis > 0)
+                moveTo(now + millis);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the clock forward to a time (nothing is done if the clock is there already).
+     *
+     * @param millis - the time.
+     */
+    public void advanceTo(long millis) {
+        lock.lock();
+        try {
+            if (millis > now)
+                moveTo(millis);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits on the clock until the time passes, or until a polling thread is given what it waits for.
+     *
+     * @param poll - checks for what the thread waits for (null if it just sleeps).
+     * @return - what the thread waited for (null if the time passed).
+     */
+    private Object await(long millis, TimedPoll<?> poll) throws InterruptedException {
+        Waiter waiter;
+        lock.lock();
+        try {
+            long deadline = millis >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + millis;
+            waiter = new Waiter(deadline, waits++, poll, registered.contains(Thread.currentThread()));
+            waiters.add(waiter);
+            if (poll != null)
+                polling.add(waiter);
+            if (waiter.registered)
+                running--;
+            tryAdvance(); // the last thread to wait moves the clock
+        } finally {
+            lock.unlock();
+        }
+
+        while (!waiter.over) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                lock.lock();
+                try {
+                    if (!waiter.over) { // stops waiting (if the wait is over, what was handed over is not lost)
+                        remove(waiter);
+                        if (waiter.registered)
+                            running++;
+                        throw new InterruptedException();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                Thread.currentThread().interrupt(); // for the next wait
+            }
+        }
+        return waiter.result;
+    }
+
+    /**
+     * If every registered thread waits on the clock: hands over to the polling threads what they wait for, and if
+     * there was nothing to hand over, moves the clock to the end of the earliest wait.
+     *
+     * @pre - the lock is held.
+     */
+    private void tryAdvance() {
+        while (running == 0 && !waiters.isEmpty()) {
+            boolean handed = false;
+            for (Waiter waiter : polling.toArray(new Waiter[0])) {
+                Object result;
+                try {
+                    result = waiter.poll.poll(0);
+                } catch (InterruptedException e) { // not waiting, so not expected
+                    Thread.currentThread().interrupt();
+                    result = null;
+                }
+                if (result != null) {
+                    waiter.result = result;
+                    end(waiter);
+                    handed = true;
+                }
+            }
+            if (handed)
+                continue; // unless all the threads woken up are not registered, they run now
+            long next = waiters.first().deadline;
+            if (next == Long.MAX_VALUE)
+                return; // every thread waits without a time limit (for a thread that is not registered)
+            moveTo(next);
+        }
+    }
+
+    /**
+     * Moves the clock to a time, and ends the waits that are over.
+     *
+     * @pre - the lock is held.
+     */
+    private void moveTo(long time) {
+        now = time;
+        while (!waiters.isEmpty() && waiters.first().deadline <= time)
+            end(waiters.first());
+    }
+
+    /**
+     * Ends a wait, and wakes up the waiting thread.
+     *
+     * @pre - the lock is held.
+     */
+    private void end(Waiter waiter) {
+        remove(waiter);
+        if (waiter.registered)
+            running++;
+        waiter.over = true;
+        LockSupport.unpark(waiter.thread);
+    }
+
+    /**
+     * @pre - the lock is held.
+     */
+    private void remove(Waiter waiter) {
+        waiters.remove(waiter);
+        if (waiter.poll != null)
+            polling.remove(waiter);
+    }
+}
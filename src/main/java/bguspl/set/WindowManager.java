@@ -8,6 +8,18 @@ import java.awt.event.WindowListener;
  */
 public class WindowManager implements WindowListener {
 
+    /**
+     * Called when the game window is closed with the X button.
+     */
+    private final Runnable onClose;
+
+    /**
+     * @param onClose - called when the game window is closed with the X button.
+     */
+    public WindowManager(Runnable onClose) {
+        this.onClose = onClose;
+    }
+
     @Override
     public void windowOpened(WindowEvent e) {
         // Auto-generated method stub
@@ -15,7 +27,7 @@ public class WindowManager implements WindowListener {
 
     @Override
     public void windowClosing(WindowEvent e) {
-        Main.xButtonPressed();
+        onClose.run();
     }
 
     @Override
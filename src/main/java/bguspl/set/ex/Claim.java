@@ -0,0 +1,57 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A set claimed by a player, sent to the dealer. The dealer completes the verdict of the claim once it checked the
+ * set, so the player can wait for it (or react to it asynchronously).
+ */
+public final class Claim {
+
+    /**
+     * The dealer's decision about a claim.
+     */
+    public static final class Verdict {
+
+        /**
+         * The verdict of a claim that was not checked: the tokens of the set changed before the dealer got to it (e.g.
+         * its cards were taken by another player), or the game ended.
+         */
+        public static final Verdict IGNORED = new Verdict(false, 0);
+
+        /**
+         * True iff the cards formed a legal set (and the player got a point).
+         */
+        public final boolean valid;
+
+        /**
+         * The number of milliseconds the player is frozen for.
+         */
+        public final long freezeMillis;
+
+        public Verdict(boolean valid, long freezeMillis) {
+            this.valid = valid;
+            this.freezeMillis = freezeMillis;
+        }
+    }
+
+    /**
+     * The player that claimed the set.
+     */
+    public final int playerId;
+
+    /**
+     * The time the set was claimed (System.nanoTime()).
+     */
+    public final long claimedNanos;
+
+    /**
+     * Completed by the dealer once it checked the set.
+     */
+    public final CompletableFuture<Verdict> verdict = new CompletableFuture<>();
+
+    public Claim(int playerId) {
+        this.playerId = playerId;
+        this.claimedNanos = System.nanoTime();
+    }
+}
@@ -1,10 +1,11 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.GameThreads;
+import bguspl.set.RandomSource;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -25,6 +26,17 @@ public class Dealer implements Runnable {
     private final Table table;
     private final Player[] players;
 
+    /**
+     * The random numbers of the dealer thread (used to deal cards).
+     */
+    private final RandomSource random;
+
+    /**
+     * The key presses of all players, in the order they were pressed (the player id in the high 32 bits, the key
+     * press in the low ones), when the dealer applies them itself (config.singleWriterCore). Null otherwise.
+     */
+    private final KeyPressBuffer keyPresses;
+
     /**
      * The list of card ids that are left in the dealer's deck.
      */
@@ -40,14 +52,27 @@ public class Dealer implements Runnable {
      */
     private long reshuffleTime = Long.MAX_VALUE;
 
+    /**
+     * The time when the countdown display should be updated next.
+     */
+    private long nextTickTime = Long.MAX_VALUE;
+
+    /**
+     * The number of claims checked, and the total time from claiming a set to its verdict (for the claims latency).
+     */
+    private long claimsChecked = 0;
+    private long claimsLatencyNanos = 0;
+
+    /**
+     * The number of rounds started (the cards were dealt, until the next reshuffle).
+     */
+    private volatile long rounds = 0;
+
     /**
      * NEW VARIABLES
      **/
-    private int sleepTime = 0;
-    private List<Integer> setFromQueue;
     public static final int SET_SIZE = 3;
     public static final int SECOND = 1000;
-    public static final int TEN_MILLIS = 10;
     public static final int IRRELEVANT_SLOT = -1;
 
 
@@ -55,8 +80,11 @@ public class Dealer implements Runnable {
         this.env = env;
         this.table = table;
         this.players = players;
+        this.random = env.random.split();
+        this.keyPresses = env.config.singleWriterCore
+                ? new KeyPressBuffer(env.config.keyPressBufferSize * env.config.players, Player.overflow(env))
+                : null;
         deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
-        this.setFromQueue = new ArrayList<>();
     }
 
     /**
@@ -65,14 +93,32 @@ public class Dealer implements Runnable {
     @Override
     public void run() {
         env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " running.");
+        env.clock.register(); // a virtual clock moves only while the dealer waits on it
+        try {
+            play();
+        } finally {
+            env.clock.unregister();
+        }
+        env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
+    }
+
+    /**
+     * The game itself, from starting the players to announcing the winners.
+     */
+    private void play() {
         //init players threads
         for (int i = 0; i < players.length; i++) {
-            Thread ithPlayerThread = new Thread(players[i]);
-            ithPlayerThread.start();
+            if (keyPresses != null)
+                players[i].startInput(); // the dealer applies the key presses, no player threads
+            else
+                GameThreads.start(players[i], "player-" + i, env.config.virtualThreads);
         }
 
         while (!shouldFinish()) {
             placeCardsOnEmptySlotsAndResetTimer();
+            rounds++;
+            if (env.logger.isLoggable(Level.INFO)) // the message (and the count of sets) is built only if logged
+                env.logger.log(Level.INFO, "Round started with " + table.countSetsOnTable() + " sets on the table.");
             nonResetTimeUpdatingAndSetsChecking();
             boolean isReset = true;
             updateTimerDisplay(isReset); //reset round
@@ -80,16 +126,22 @@ public class Dealer implements Runnable {
 
         }
         announceWinners();
+        if (claimsChecked > 0)
+            env.logger.log(Level.INFO, claimsChecked + " claims checked, " + claimsLatencyNanos / claimsChecked / 1000 + " microseconds from claim to verdict on average.");
+        if (keyPresses != null && keyPresses.dropped() + keyPresses.coalesced() > 0)
+            env.logger.log(Level.INFO, "Dropped " + keyPresses.dropped() + " key presses and coalesced " + keyPresses.coalesced() + " pairs of key presses.");
         terminate();
-        env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
     }
 
     /**
      * The inner loop of the dealer thread that runs as long as the countdown did not time out.
      */
     private void nonResetTimeUpdatingAndSetsChecking() {
-        while (!terminate && System.currentTimeMillis() < reshuffleTime) {
-            sleepAndCheckForSets();
+        while (!terminate && env.clock.currentTimeMillis() < reshuffleTime) {
+            if (keyPresses != null)
+                sleepAndApplyKeyPresses();
+            else
+                sleepAndCheckForSets();
             boolean isReset = false;
             updateTimerDisplay(isReset);
 
@@ -108,6 +160,9 @@ public class Dealer implements Runnable {
 
         }
         terminate = true; // close the dealer thread too
+        for (Claim claim; (claim = table.setsForDealer.poll()) != null; ) // no one will check these anymore
+            claim.verdict.complete(Claim.Verdict.IGNORED);
+        table.shutdown();
 
     }
 
@@ -117,33 +172,15 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        return terminate || env.util.findSets(table.deck, 1).size() == 0;
+        return terminate || !table.hasSetInGame();
     }
 
     /**
      * Checks cards should be removed from the table and removes them.
      */
-    private void removeCardsFromTable(List<Integer> slotsToRemove, boolean removeForever) { // remove for a valid set
-        while (!slotsToRemove.isEmpty()) {
-            int randomIndex = (int) (Math.random() * slotsToRemove.size());
-            int slotToRemove = slotsToRemove.get(randomIndex);
-            table.removeCard(slotToRemove, removeForever); // remove the card on the slot
-            slotsToRemove.remove(randomIndex); // remove the slot from slots to remove.
-
-            // + remove the bad slots from the queues of the players
-            for (Player curr_player : players) {
-                while (curr_player.playerSlotsRequestsQ.contains(slotToRemove)) {
-                    curr_player.playerSlotsRequestsQ.remove(slotToRemove); // if the slot is in the queue of the player - remove it.
-                }
-                if (curr_player.slotFromQueue == slotToRemove) { // check if the player after stopping is holding a slot that won't be relevant.
-                    curr_player.slotFromQueue = IRRELEVANT_SLOT;
-                }
-
-                table.removeToken(curr_player.id, slotToRemove); // remove the tokens if they are on the slots
-            }
-
-
-        }
+    private void removeCardsFromTable(int[] slotsToRemove, boolean removeForever) { // remove for a valid set
+        // the key presses of the removed cards still in the players' queues become stale, and are ignored when taken out
+        table.removeCards(slotsToRemove, removeForever); // remove the cards (one delay, one ui update)
     }
 
 
@@ -153,17 +190,21 @@ public class Dealer implements Runnable {
     private void placeCardsOnEmptySlotsAndResetTimer() {
 
 
-        while (!table.emptySlots.isEmpty() && !table.deck.isEmpty()) { //checking if are there any slots that need to be fill, and any cards in deck that can fill
-            int randomSlotIndex = (int) (Math.random() * table.emptySlots.size());
-            int randomCardIndex = (int) (Math.random() * table.deck.size());
-            // update the arrays
-            int card = table.deck.remove(randomCardIndex); // saves and removes the card from the deck
-            int slot = table.emptySlots.remove(randomSlotIndex); // saves and removes the slot from the empty slots.
-            // place the card on table
-            table.placeCard(card, slot);
-
+        int[] emptySlots = table.emptySlots.toArray();
+        int count = Math.min(emptySlots.length, table.deck.size()); // the number of slots that can be filled
+        int[] cards = new int[count];
+        int[] slots = new int[count];
+        for (int i = 0; i < count; i++) { // a Fisher-Yates draw from the deck and from the empty slots
+            int randomSlotIndex = i + random.nextInt(emptySlots.length - i);
+            int randomCardIndex = random.nextInt(table.deck.size());
+            cards[i] = table.deck.removeAt(randomCardIndex); // saves and removes the card from the deck (swapping the last card in)
+            slots[i] = emptySlots[randomSlotIndex]; // the slot stops being empty when the card is placed.
+            emptySlots[randomSlotIndex] = emptySlots[i];
         }
-        if ((!shouldFinish()) & env.util.findSets(table.tableCards, 1).isEmpty()) {
+        // place all the cards on table (one delay, one ui update)
+        table.placeCards(cards, slots);
+
+        if ((!shouldFinish()) & !table.hasSetOnTable()) {
             removeAllSlotsWithCardFromTable();
             placeCardsOnEmptySlotsAndResetTimer();
         }
@@ -172,9 +213,7 @@ public class Dealer implements Runnable {
 
         // after finishing placing cards on the table - make all the players continue.
 
-        synchronized (table.allPlayersLock) {
-            table.allPlayersLock.notifyAll();
-        }
+        table.signalCardsPlaced();
         if (shouldFinish()){
             removeAllSlotsWithCardFromTable();
             terminate = true;
@@ -182,104 +221,164 @@ public class Dealer implements Runnable {
     }
 
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
+     * Sleep until the next event: a set claimed by a player, the next update of the countdown display or the
+     * reshuffle time (whichever comes first).
      */
     private void sleepAndCheckForSets() {
 
         try {
 
-            Integer playerId;
-            playerId = table.setsForDealer.poll(sleepTime, TimeUnit.MILLISECONDS); //sleep a millisecond and poll
-
-            if (playerId != null) { // woke up because of a set
-                setFromQueue = table.tokensOnTable.get(playerId);
-                if (setFromQueue.size() == SET_SIZE) { // size of set is ok. (no token was removed from the set)
-                    int[] setAsCards = new int[SET_SIZE];
-                    for (int i = 0; i < SET_SIZE; i++) {
-                        setAsCards[i] = table.slotToCard[setFromQueue.get(i)];
-                    }
-
-
-                    boolean setIsValid = env.util.testSet(setAsCards);
-
-                    if (setIsValid) { // set is valid
-
-                        synchronized (table) {
-                            table.areAllCanRecieveKey = false;
-                            Player player = players[playerId];
-                            // give him a point
-                            player.point();
-
-                            //change the variable of player to 1;
-                            player.penaltyTime = (int) env.config.pointFreezeMillis;
-
-                            //remove cards
-                            removeCardsFromTable(setFromQueue, true);
-
-                            //place 3 new cards (if there are enough) - the reset of time will be inside this method
-                            placeCardsOnEmptySlotsAndResetTimer();
-
-                            // + player gets out of wait and checks the one sec freeze
-                            // every one can receive keys
-                            table.areAllCanRecieveKey = true;
+            Claim claim;
+            long waitTime = Math.max(0, Math.min(nextTickTime, reshuffleTime) - env.clock.currentTimeMillis());
+            claim = env.clock.poll(table.setsForDealer, waitTime); // wakes up as soon as a set is claimed
 
-                        }
+            if (claim != null) { // woke up because of a set
+                List<Claim> claims = new ArrayList<>(players.length);
+                claims.add(claim);
+                table.setsForDealer.drainTo(claims); // check all the sets claimed meanwhile together
+                checkClaims(claims);
+            }
+        } catch (InterruptedException ignored) {
+        }
+        ;
 
-                    } else { //set is not valid
-                        // penalize the player
-                        players[playerId].penaltyTime = (int) env.config.penaltyFreezeMillis;
-                        while(!table.tokensOnTable.get(playerId).isEmpty()){
-                            table.removeToken(playerId, table.tokensOnTable.get(playerId).get(0));
-                        }
+    }
 
-                    }
+    /**
+     * Sleep until the next event (see sleepAndCheckForSets), and apply the key presses of the players meanwhile, in
+     * the order they were pressed (when config.singleWriterCore is set). A set claimed by a key press is checked at
+     * once, and the player freezes by the verdict.
+     */
+    private void sleepAndApplyKeyPresses() {
+        try {
+            long waitTime = Math.max(0, Math.min(nextTickTime, reshuffleTime) - env.clock.currentTimeMillis());
+            for (long event = keyPresses.poll(env.clock, waitTime); event != KeyPressBuffer.NONE && !terminate; event = keyPresses.poll(0)) {
+                int playerId = (int) (event >>> Integer.SIZE);
+                if (table.isFrozen(playerId)) // pressed before the freeze started
+                    continue;
+                Claim claim = table.placeTokenOfKeyPress(playerId, (int) event);
+                if (claim != null) { // checked at once, and the player freezes here, on the dealer thread
+                    claim.verdict.thenAccept(verdict -> table.freeze(claim.playerId, verdict.freezeMillis));
+                    List<Claim> claims = new ArrayList<>(1);
+                    claims.add(claim);
+                    checkClaims(claims);
                 }
+                if (env.clock.currentTimeMillis() >= Math.min(nextTickTime, reshuffleTime))
+                    break; // time to update the countdown display
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
 
-                //dealer finished with the players set -> wake him up.
-                synchronized (players[playerId]) {
-                    players[playerId].notifyAll();
-                }
+    /**
+     * Gets a key press of a player, to be applied by the dealer thread (when config.singleWriterCore is set).
+     * Never blocks.
+     *
+     * @param playerId - the player.
+     * @param keyPress - the key press (see Table.keyPress).
+     */
+    void keyPressed(int playerId, int keyPress) {
+        keyPresses.offer(((long) playerId << Integer.SIZE) | keyPress);
+    }
 
+    /**
+     * Checks the sets claimed by players, in the order they were claimed. A set sharing a slot with a set that was
+     * found valid earlier in the batch is ignored (as if its tokens were removed with the cards). The cards of all
+     * the valid sets are then replaced at once (one removal, one deal), and the verdicts of all the claims are given.
+     *
+     * @param claims - the claims, in the order the sets were claimed.
+     */
+    private void checkClaims(List<Claim> claims) {
+        long takenSlots = 0; // the slots of the valid sets found so far
+        int[] setAsCards = new int[SET_SIZE];
+        Claim.Verdict[] verdicts = new Claim.Verdict[claims.size()];
+        Claim.Verdict valid = new Claim.Verdict(true, env.config.pointFreezeMillis);
+        Claim.Verdict invalid = new Claim.Verdict(false, env.config.penaltyFreezeMillis);
+        for (int c = 0; c < verdicts.length; c++) {
+            int playerId = claims.get(c).playerId;
+            long tokens = table.tokens(playerId);
+            verdicts[c] = Claim.Verdict.IGNORED;
+            if (Long.bitCount(tokens) != SET_SIZE || (tokens & takenSlots) != 0) // a token was removed from the set, or its cards are taken
+                continue;
+
+            int[] slots = Table.tokensToSlots(tokens);
+            for (int i = 0; i < SET_SIZE; i++)
+                setAsCards[i] = table.slotToCard[slots[i]];
+
+            if (env.util.testSet(setAsCards)) { // set is valid
+                // give him a point
+                players[playerId].point();
+                verdicts[c] = valid;
+                takenSlots |= tokens;
+            } else { //set is not valid
+                // penalize the player
+                verdicts[c] = invalid;
+                table.removePlayerTokens(playerId);
             }
-        } catch (InterruptedException ignored) {
         }
-        ;
 
+        if (takenSlots != 0) {
+            // the table locks only the slots being replaced, other players keep playing meanwhile
+            //remove cards (and the tokens on them)
+            removeCardsFromTable(Table.tokensToSlots(takenSlots), true);
+            //place new cards (if there are enough) - the reset of time will be inside this method
+            placeCardsOnEmptySlotsAndResetTimer();
+        }
+
+        //dealer finished with the players sets -> give the verdicts.
+        long now = System.nanoTime();
+        for (int c = 0; c < verdicts.length; c++) {
+            Claim claim = claims.get(c);
+            claim.verdict.complete(verdicts[c]);
+            claimsChecked++;
+            long latency = now - claim.claimedNanos;
+            claimsLatencyNanos += latency;
+            if (env.logger.isLoggable(Level.FINE)) // the message is built only if logged
+                env.logger.log(Level.FINE, "Claim of player " + claim.playerId + " checked in " + latency / 1000 + " microseconds.");
+        }
     }
 
     /**
-     * Reset and/or update the countdown and the countdown display.
+     * Reset and/or update the countdown and the countdown display. Without a reset, the display is updated only
+     * when its next tick is due.
      */
     private void updateTimerDisplay(boolean doReset) {
+        long now = env.clock.currentTimeMillis();
         if (doReset) {
-            reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
-            sleepTime = SECOND ;
+            reshuffleTime = now + env.config.turnTimeoutMillis;
             env.ui.setCountdown(env.config.turnTimeoutMillis, false);
         } else {
-            if (reshuffleTime - System.currentTimeMillis() < env.config.turnTimeoutWarningMillis) {
-                sleepTime = TEN_MILLIS;
-                env.ui.setCountdown(reshuffleTime - System.currentTimeMillis(), true);
+            if (now < nextTickTime)
+                return; // woke up because of a set, the display is still up to date
+            if (reshuffleTime - now < env.config.turnTimeoutWarningMillis) {
+                env.ui.setCountdown(reshuffleTime - now, true);
 
             } else {
-                env.ui.setCountdown(reshuffleTime - System.currentTimeMillis(), false);
+                env.ui.setCountdown(reshuffleTime - now, false);
             }
 
         }
+        nextTickTime = nextTickTime(now);
+    }
+
+    /**
+     * @param now - the current time.
+     * @return - the time of the next update of the countdown display: one tick from now (a shorter tick during the
+     *           warning period), but never after the warning period starts or after the reshuffle time.
+     */
+    private long nextTickTime(long now) {
+        long warningTime = reshuffleTime - env.config.turnTimeoutWarningMillis;
+        if (now >= warningTime)
+            return Math.min(now + env.config.turnTimeoutWarningTickMillis, reshuffleTime);
+        return Math.min(now + env.config.turnTimeoutTickMillis, warningTime);
     }
 
     /**
      * Returns all the cards from the table to the deck.
      */
     private void removeAllSlotsWithCardFromTable() {
-        List<Integer> slotsToRemove = new ArrayList<>(env.config.tableSize - table.emptySlots.size());
-        for (int i = 0; i < env.config.tableSize; i++) {
-            if (!table.emptySlots.contains(i)) { // if the slot is not empty right now - add it to the slots to remove list.
-                slotsToRemove.add(i);
-            }
-        }
-
-        removeCardsFromTable(slotsToRemove, false);
-        setFromQueue.clear();
+        // the slots that are not empty right now
+        removeCardsFromTable(table.emptySlots.complementToArray(env.config.tableSize), false);
     }
 
     public void test_RemoveAllCardsOnTable(){
@@ -316,6 +415,20 @@ public class Dealer implements Runnable {
 
     }
 
+    /**
+     * @return - the number of claims checked so far.
+     */
+    public long claimsChecked() {
+        return claimsChecked;
+    }
+
+    /**
+     * @return - the number of rounds started so far.
+     */
+    public long rounds() {
+        return rounds;
+    }
+
     public void callAnnounceWinners(){
         announceWinners();
     }
@@ -0,0 +1,127 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The freezes of all players, kept as deadlines. Checking whether a player is frozen is O(1) and never blocks, so no
+ * player thread has to sleep through its freeze.
+ *
+ * The freeze display of all the frozen players is updated together, by a single timer thread that ticks only while
+ * some player is frozen (the ui is called only when the displayed number of seconds changes).
+ */
+class FreezeTimer {
+
+    /**
+     * The number of milliseconds between two updates of the freeze display.
+     */
+    static final long TICK_MILLIS = 100;
+
+    private final Env env;
+
+    /**
+     * The time each player's freeze ends (0 if the player was never frozen). Written only by freeze (so only by the
+     * dealer thread when config.singleWriterCore is set): the timer thread only reads them.
+     */
+    private final AtomicLongArray deadlines;
+
+    /**
+     * The freeze displayed for each player, in whole seconds (accessed only by the timer thread).
+     */
+    private final long[] displayed;
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The periodic update of the freeze display (null while no player is frozen; accessed only by the timer thread).
+     */
+    private ScheduledFuture<?> ticks;
+
+    FreezeTimer(Env env) {
+        this.env = env;
+        deadlines = new AtomicLongArray(env.config.players);
+        displayed = new long[env.config.players];
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "freeze-timer");
+            thread.setDaemon(true); // never keeps the game from ending
+            return thread;
+        });
+    }
+
+    /**
+     * Freezes a player (replacing its current freeze, if any). Returns immediately.
+     *
+     * @param playerId - the player to freeze.
+     * @param millis   - the number of milliseconds to freeze the player for.
+     */
+    void freeze(int playerId, long millis) {
+        if (millis <= 0)
+            return;
+        deadlines.set(playerId, env.clock.currentTimeMillis() + millis);
+        try {
+            scheduler.execute(this::startTicks);
+        } catch (RejectedExecutionException ignored) { // shut down
+        }
+    }
+
+    /**
+     * @param playerId - the player.
+     * @return - true iff the player is frozen now.
+     */
+    boolean isFrozen(int playerId) {
+        long deadline = deadlines.get(playerId);
+        return deadline != 0 && env.clock.currentTimeMillis() < deadline;
+    }
+
+    /**
+     * @param playerId - the player.
+     * @return - the number of milliseconds until the freeze of the player is over (0 if the player is not frozen).
+     */
+    long remainingMillis(int playerId) {
+        long deadline = deadlines.get(playerId);
+        return deadline == 0 ? 0 : Math.max(0, deadline - env.clock.currentTimeMillis());
+    }
+
+    /**
+     * Stops the timer (the freezes are not displayed anymore).
+     */
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void startTicks() {
+        tick();
+        if (ticks == null)
+            ticks = scheduler.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Updates the freeze display of all the players.
+     */
+    private void tick() {
+        boolean anyFrozen = false;
+        for (int playerId = 0; playerId < displayed.length; playerId++) {
+            long deadline = deadlines.get(playerId);
+            long now = env.clock.currentTimeMillis(); // after the deadline, which may have been set just now
+            long seconds = deadline == 0 ? 0 : (deadline - now + Player.SECOND_MILLIS - 1) / Player.SECOND_MILLIS;
+            if (seconds <= 0)
+                seconds = 0; // the freeze is over (isFrozen compares with the deadline)
+            else
+                anyFrozen = true;
+            if (seconds != displayed[playerId]) {
+                displayed[playerId] = seconds;
+                env.ui.setFreeze(playerId, seconds * Player.SECOND_MILLIS);
+            }
+        }
+        if (!anyFrozen && ticks != null) {
+            ticks.cancel(false);
+            ticks = null;
+        }
+    }
+}
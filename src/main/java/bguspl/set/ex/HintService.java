@@ -0,0 +1,189 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+import bguspl.set.SetCursor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+
+/**
+ * Finds the legal sets on the table (the hints) in the background, once for every version of the cards on the table.
+ *
+ * The table asks for a refresh whenever its cards change. The hints are then looked for on a single background
+ * thread, in the latest snapshot of the table (several changes in a row are looked at once), and cached with the
+ * version (TableSnapshot.cardsEpoch) they were found in, so getting the hints of the table is O(1).
+ */
+class HintService {
+
+    /**
+     * The hints found in one version of the cards on the table. Immutable.
+     */
+    static final class Hints {
+
+        /**
+         * The version of the cards on the table the hints were found in (-1 if no hints were looked for yet).
+         */
+        final long cardsEpoch;
+
+        /**
+         * The slots (sorted) and the cards of every set.
+         */
+        private final int[][] slots, cards;
+
+        private Hints(long cardsEpoch, int[][] slots, int[][] cards) {
+            this.cardsEpoch = cardsEpoch;
+            this.slots = slots;
+            this.cards = cards;
+        }
+
+        /**
+         * @return - the number of sets on the table.
+         */
+        int size() {
+            return slots.length;
+        }
+
+        /**
+         * @param set - the index of the set (between 0 and size() - 1).
+         * @return - the slots of the set, sorted (a copy).
+         */
+        int[] slots(int set) {
+            return slots[set].clone();
+        }
+
+        /**
+         * @param set - the index of the set (between 0 and size() - 1).
+         * @return - the cards of the set (a copy).
+         */
+        int[] cards(int set) {
+            return cards[set].clone();
+        }
+    }
+
+    private static final Hints NO_HINTS = new Hints(-1, new int[0][], new int[0][]);
+
+    private final Env env;
+    private final Table table;
+
+    /**
+     * True iff the hints should be printed whenever they change.
+     */
+    private final boolean print;
+
+    /**
+     * The hints of the latest version of the cards that was looked at.
+     */
+    private final AtomicReference<Hints> hints = new AtomicReference<>(NO_HINTS);
+
+    /**
+     * True iff a refresh is waiting to run (so a burst of changes schedules a single refresh).
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final ExecutorService executor;
+
+    /**
+     * @param env   - the game environment objects.
+     * @param table - the table to find the hints of.
+     * @param print - true iff the hints should be printed to the console whenever they change.
+     */
+    HintService(Env env, Table table, boolean print) {
+        this.env = env;
+        this.table = table;
+        this.print = print;
+        executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "hints");
+            thread.setDaemon(true); // never keeps the game from ending
+            return thread;
+        });
+    }
+
+    /**
+     * Asks for the hints to be found again (in the background), since the cards on the table changed.
+     * Returns immediately.
+     */
+    void refresh() {
+        if (scheduled.compareAndSet(false, true))
+            try {
+                executor.execute(this::update);
+            } catch (RejectedExecutionException ignored) { // shut down
+                scheduled.set(false);
+            }
+    }
+
+    /**
+     * @return - the latest hints found (may be of an older version of the cards than the current one, see
+     *           Hints.cardsEpoch).
+     */
+    Hints hints() {
+        return hints.get();
+    }
+
+    /**
+     * Stops finding hints.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void update() {
+        scheduled.set(false); // a change from now on needs another refresh
+        TableSnapshot snapshot = table.snapshot();
+        if (snapshot.cardsEpoch == hints.get().cardsEpoch)
+            return;
+
+        Hints found = find(snapshot);
+        env.logger.log(Level.FINE, "Found " + found.size() + " hints in version " + found.cardsEpoch + " of the table.");
+        if (print)
+            print(found);
+    }
+
+    /**
+     * Finds the hints of a snapshot of the table (on the calling thread) and caches them, unless hints of a newer
+     * version were cached meanwhile.
+     *
+     * @param snapshot - the snapshot of the table.
+     * @return - the hints of the snapshot.
+     */
+    Hints find(TableSnapshot snapshot) {
+        List<Integer> cards = new ArrayList<>();
+        for (int card : snapshot.cards())
+            cards.add(card);
+        List<int[]> setsSlots = new ArrayList<>();
+        List<int[]> setsCards = new ArrayList<>();
+        SetCursor cursor = env.util.setCursor(cards);
+        for (int[] set = new int[env.config.featureSize]; cursor.next(set); ) {
+            int[] slots = new int[set.length];
+            for (int i = 0; i < set.length; i++)
+                slots[i] = snapshot.slotOf(set[i]);
+            Arrays.sort(slots);
+            setsSlots.add(slots);
+            setsCards.add(set.clone());
+        }
+        Hints found = new Hints(snapshot.cardsEpoch, setsSlots.toArray(new int[0][]), setsCards.toArray(new int[0][]));
+        hints.accumulateAndGet(found, (cached, next) -> next.cardsEpoch > cached.cardsEpoch ? next : cached);
+        return found;
+    }
+
+    /**
+     * Prints hints to the console.
+     *
+     * @param hints - the hints to print.
+     */
+    void print(Hints hints) {
+        StringBuilder sb = new StringBuilder();
+        for (int set = 0; set < hints.size(); set++) {
+            sb.append("Hint: Set found: slots: ").append(Arrays.toString(hints.slots[set]))
+                    .append(" features: ").append(Arrays.deepToString(env.util.cardsToFeatures(hints.cards[set])))
+                    .append(System.lineSeparator());
+        }
+        System.out.print(sb);
+    }
+}
@@ -0,0 +1,90 @@
+package bguspl.set.ex;
+
+/**
+ * An unordered pool of distinct ints between 0 and capacity - 1, without boxing.
+ * Adding, removing (by value or by index) and checking membership are all O(1): a removed value is replaced by the
+ * last value in the pool.
+ *
+ * Not thread safe.
+ *
+ * @inv 0 <= size <= capacity
+ * @inv values[position[v] - 1] == v for every value v in the pool
+ */
+class IntPool {
+
+    /**
+     * The values in the pool (the first size entries).
+     */
+    private final int[] values;
+
+    /**
+     * 1 + the index of each value in values (0 if the value is not in the pool).
+     */
+    private final int[] position;
+
+    private int size;
+
+    /**
+     * @param capacity - the values in the pool are between 0 and capacity - 1.
+     */
+    IntPool(int capacity) {
+        values = new int[capacity];
+        position = new int[capacity];
+    }
+
+    /**
+     * @param value - the value to add.
+     * @return - true iff the value was not in the pool.
+     */
+    boolean add(int value) {
+        if (position[value] != 0) return false;
+        values[size] = value;
+        position[value] = ++size;
+        return true;
+    }
+
+    /**
+     * @param value - the value to remove.
+     * @return - true iff the value was in the pool.
+     */
+    boolean remove(int value) {
+        if (position[value] == 0) return false;
+        removeAt(position[value] - 1);
+        return true;
+    }
+
+    /**
+     * Removes the value at the given index (the last value takes its place).
+     *
+     * @param index - an index between 0 and size - 1.
+     * @return - the removed value.
+     */
+    int removeAt(int index) {
+        int value = values[index];
+        int last = values[--size];
+        values[index] = last;
+        position[last] = index + 1;
+        position[value] = 0;
+        return value;
+    }
+
+    /**
+     * @param index - an index between 0 and size - 1.
+     * @return - the value at the index.
+     */
+    int get(int index) {
+        return values[index];
+    }
+
+    boolean contains(int value) {
+        return value >= 0 && value < position.length && position[value] != 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -0,0 +1,265 @@
+package bguspl.set.ex;
+
+import bguspl.set.Clock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free queue of the key presses of a player (see Table.keyPress), from any number of threads (the ui
+ * thread, the AI thread) to the player thread. A press may be tagged with more data in its high bits (e.g. the id of
+ * the player, when the presses of all players go to the dealer).
+ *
+ * The presses are kept in a preallocated ring of longs, so adding a press never allocates memory and never blocks:
+ * when the ring is full the press is handled according to the overflow policy. Every cell of the ring has a sequence
+ * number telling whether it is free to write or ready to read in the current round of the ring, and the threads
+ * claim cells by a compare-and-set of the head/tail counters.
+ */
+final class KeyPressBuffer {
+
+    /**
+     * What to do with a key press when the buffer is full.
+     */
+    enum Overflow {
+        /**
+         * Drop the oldest press in the buffer to make room for the new one.
+         */
+        DROP_OLDEST,
+        /**
+         * Drop the new press.
+         */
+        DROP_NEWEST,
+        /**
+         * If the same key press is waiting in the buffer, cancel both (two toggles of a token on the same card undo
+         * each other). Otherwise drop the new press.
+         */
+        COALESCE
+    }
+
+    /**
+     * The content of a free cell, and of the cell of a press that was cancelled (see Overflow.COALESCE).
+     */
+    static final long NONE = -1, CANCELLED = -2;
+
+    private final Overflow overflow;
+
+    private final int mask;
+
+    /**
+     * The presses in the ring, and the sequence number of each cell: cell i is free to write the press number p
+     * (counting from 0) iff its sequence is p, and holds press number p, ready to read, iff its sequence is p + 1.
+     */
+    private final AtomicLongArray presses;
+    private final AtomicLongArray sequences;
+
+    /**
+     * The number of the next press to read, and of the next press to write.
+     */
+    private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+
+    /**
+     * The number of presses dropped, and the number of pairs of presses cancelled, because the buffer was full.
+     */
+    private final AtomicLong dropped = new AtomicLong(), coalesced = new AtomicLong();
+
+    /**
+     * The thread waiting in take (null if none).
+     */
+    private volatile Thread consumer;
+
+    /**
+     * @param capacity - the minimal number of presses the buffer holds (rounded up to a power of 2, at least 2).
+     * @param overflow - what to do with a key press when the buffer is full.
+     */
+    KeyPressBuffer(int capacity, Overflow overflow) {
+        int size = Math.max(2, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+        this.overflow = overflow;
+        mask = size - 1;
+        presses = new AtomicLongArray(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            presses.set(i, NONE);
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds a key press. Never blocks: if the buffer is full, the press is handled according to the overflow policy.
+     *
+     * @param press - the key press (not negative).
+     * @return - true iff the press was added.
+     */
+    boolean offer(long press) {
+        while (!tryOffer(press)) {
+            switch (overflow) {
+                case DROP_OLDEST:
+                    if (tryPoll() != NONE)
+                        dropped.incrementAndGet();
+                    break; // and try again
+                case COALESCE:
+                    if (cancel(press)) {
+                        coalesced.incrementAndGet();
+                        return false;
+                    }
+                    dropped.incrementAndGet(); // no same press to cancel: drop the new one
+                    return false;
+                default:
+                    dropped.incrementAndGet();
+                    return false;
+            }
+        }
+        Thread waiting = consumer;
+        if (waiting != null)
+            LockSupport.unpark(waiting);
+        return true;
+    }
+
+    /**
+     * Takes out the oldest key press, waiting for one if the buffer is empty.
+     *
+     * @return - the key press.
+     * @throws InterruptedException - if the thread is interrupted while waiting.
+     */
+    long take() throws InterruptedException {
+        while (true) {
+            long press = tryPoll();
+            if (press != NONE)
+                return press;
+            consumer = Thread.currentThread();
+            try {
+                press = tryPoll(); // a press added before consumer was set would not unpark the thread
+                if (press != NONE)
+                    return press;
+                LockSupport.park(this);
+            } finally {
+                consumer = null;
+            }
+            if (Thread.interrupted())
+                throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Takes out the oldest key press, waiting up to the given time for one if the buffer is empty.
+     *
+     * @param timeoutMillis - the maximal number of milliseconds to wait (Long.MAX_VALUE to wait without a time limit).
+     * @return - the key press, or NONE if no press was added in time.
+     * @throws InterruptedException - if the thread is interrupted while waiting.
+     */
+    long poll(long timeoutMillis) throws InterruptedException {
+        if (timeoutMillis == Long.MAX_VALUE)
+            return take();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (true) {
+            long press = tryPoll();
+            if (press != NONE)
+                return press;
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                return NONE;
+            consumer = Thread.currentThread();
+            try {
+                press = tryPoll(); // a press added before consumer was set would not unpark the thread
+                if (press != NONE)
+                    return press;
+                LockSupport.parkNanos(this, remaining);
+            } finally {
+                consumer = null;
+            }
+            if (Thread.interrupted())
+                throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Takes out the oldest key press, waiting up to the given time on a clock for one if the buffer is empty (so a
+     * virtual clock knows the thread waits, see Clock.register).
+     *
+     * @param clock         - the clock of the game.
+     * @param timeoutMillis - the maximal number of milliseconds to wait (Long.MAX_VALUE to wait without a time limit).
+     * @return - the key press, or NONE if no press was added in time.
+     * @throws InterruptedException - if the thread is interrupted while waiting.
+     */
+    long poll(Clock clock, long timeoutMillis) throws InterruptedException {
+        long press = tryPoll();
+        if (press != NONE || timeoutMillis <= 0)
+            return press;
+        Long waited = clock.poll(timeout -> { // boxed only when the thread had to wait
+            long next = poll(timeout);
+            return next == NONE ? null : next;
+        }, timeoutMillis);
+        return waited == null ? NONE : waited;
+    }
+
+    /**
+     * @return - the number of presses dropped because the buffer was full.
+     */
+    long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return - the number of pairs of presses cancelled because the buffer was full (see Overflow.COALESCE).
+     */
+    long coalesced() {
+        return coalesced.get();
+    }
+
+    private boolean tryOffer(long press) {
+        long position = tail.get();
+        while (true) {
+            int cell = (int) position & mask;
+            long difference = sequences.get(cell) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    presses.set(cell, press);
+                    sequences.set(cell, position + 1); // ready to read
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false; // full
+            } else {
+                position = tail.get(); // another thread wrote this cell meanwhile
+            }
+        }
+    }
+
+    /**
+     * @return - the oldest key press (NONE if the buffer is empty), skipping cancelled presses.
+     */
+    private long tryPoll() {
+        long position = head.get();
+        while (true) {
+            int cell = (int) position & mask;
+            long difference = sequences.get(cell) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    long press = presses.getAndSet(cell, NONE);
+                    sequences.set(cell, position + mask + 1); // free to write in the next round
+                    if (press != CANCELLED)
+                        return press;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return NONE; // empty
+            } else {
+                position = head.get(); // another thread read this cell meanwhile
+            }
+        }
+    }
+
+    /**
+     * Cancels a waiting key press equal to the given one.
+     *
+     * @return - true iff such a press was found (and cancelled).
+     */
+    private boolean cancel(long press) {
+        for (int cell = 0; cell <= mask; cell++)
+            if (presses.compareAndSet(cell, press, CANCELLED))
+                return true;
+        return false;
+    }
+}
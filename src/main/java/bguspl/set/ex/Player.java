@@ -1,10 +1,13 @@
 package bguspl.set.ex;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 
 import bguspl.set.Env;
+import bguspl.set.GameThreads;
+import bguspl.set.RandomSource;
 
 /**
  * This class manages the players' threads and data
@@ -24,6 +27,11 @@ public class Player implements Runnable {
      */
     private final Table table;
 
+    /**
+     * The dealer (gets the key presses when config.singleWriterCore is set).
+     */
+    private final Dealer dealer;
+
     /**
      * The id of the player (starting from 0).
      */
@@ -44,6 +52,11 @@ public class Player implements Runnable {
      */
     private final boolean human;
 
+    /**
+     * The random numbers of the AI (computer) player thread.
+     */
+    private final RandomSource random;
+
     /**
      * True iff game should be terminated due to an external event.
      */
@@ -57,10 +70,8 @@ public class Player implements Runnable {
     /**
      * NEW FIELDS
      **/
-    protected BlockingQueue<Integer> playerSlotsRequestsQ; // thread-safe queue
-    protected Integer slotFromQueue;
-    protected int penaltyTime = 0;
-    protected boolean isPlayerCanRecieveKey;
+    protected KeyPressBuffer playerSlotsRequestsQ; // lock-free queue of key presses (see Table.keyPress)
+    protected volatile boolean isPlayerCanRecieveKey;
     public static final int SECOND_MILLIS = 1000;
 
 
@@ -76,11 +87,12 @@ public class Player implements Runnable {
     public Player(Env env, Dealer dealer, Table table, int id, boolean human) {
         this.env = env;
         this.table = table;
+        this.dealer = dealer;
         this.id = id;
         this.human = human;
-        this.slotFromQueue = Dealer.IRRELEVANT_SLOT;
+        this.random = env.random.split();
         this.isPlayerCanRecieveKey = true;
-        this.playerSlotsRequestsQ = new LinkedBlockingQueue<>(3);
+        this.playerSlotsRequestsQ = new KeyPressBuffer(env.config.keyPressBufferSize, overflow(env));
     }
 
     /**
@@ -97,77 +109,129 @@ public class Player implements Runnable {
 
         if (!human) createRandomKeysPresserThreadAndStart();
 
-        synchronized (table.allPlayersLock) { // when player thread starts, he waits until dealer finishes placing card and wakes him up
-            try {
-                table.areAllCanRecieveKey = false;
-                table.allPlayersLock.wait();
-            } catch (InterruptedException ignored) {
-            } finally {
-                table.areAllCanRecieveKey = true;
-            }
+        try { // when player thread starts, he waits until dealer finishes placing card and wakes him up
+            table.awaitCardsPlaced();
+        } catch (InterruptedException ignored) {
+        }
+
+        env.clock.register(); // a virtual clock moves only while the player waits on it
+        try {
+            takeKeyPresses();
+        } finally {
+            env.clock.unregister();
+        }
+
+        if (!human) try {
+            randomKeysPresserThread.join();
+        } catch (InterruptedException ignored) {
         }
 
-        // ** main loop for the thread **
+        if (playerSlotsRequestsQ.dropped() + playerSlotsRequestsQ.coalesced() > 0)
+            env.logger.log(Level.INFO, "Player " + id + " dropped " + playerSlotsRequestsQ.dropped() + " key presses and coalesced " + playerSlotsRequestsQ.coalesced() + " pairs of key presses.");
+        env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
+
+    }
+
+    /**
+     * The main loop of the player thread: applies the key presses of the player until the game is terminated.
+     */
+    private void takeKeyPresses() {
         while (!terminate) {
 
             try {
-                slotFromQueue = playerSlotsRequestsQ.take(); // take out the slot
-                synchronized (this) { //make sure dealer and other players threads not access to the current player instance
-                    boolean isShouldSleep = false;
-                    synchronized (table) {
-                        isShouldSleep = table.placeTokenReturnIsPlayerShouldSleep(id, slotFromQueue); // send to the table
-                    }
-                    if (isShouldSleep) { // if it claimed for set then it should sleep --> deactivate keyboard requests
-                        try {
-                            isPlayerCanRecieveKey = false;
-                            wait();
-                        } catch (InterruptedException ignored) {
-                        }
+                int keyPress = (int) playerSlotsRequestsQ.poll(env.clock, Long.MAX_VALUE); // take out the key press
+                if (table.isFrozen(id)) // pressed before the freeze started
+                    continue;
+                Claim claim = table.placeTokenOfKeyPress(id, keyPress); // send to the table (ignored if the card was replaced meanwhile)
+                if (claim != null) { // if it claimed for set then it should wait for the verdict --> deactivate keyboard requests
+                    isPlayerCanRecieveKey = false;
+                    try {
+                        table.freeze(id, awaitVerdict(claim).freezeMillis);
+                    } finally {
+                        isPlayerCanRecieveKey = true;
                     }
-                    penalize();
-                    isPlayerCanRecieveKey = true;
-                    penaltyTime = 0; // reset the penalty time after the dealer changed it in its thread
-
                 }
 
             } catch (InterruptedException ignored) {
             }
 
         }
+    }
 
-        if (!human) try {
-            randomKeysPresserThread.join();
-        } catch (InterruptedException ignored) {
-        }
+    /**
+     * Waits for the dealer to check a claim of the player, on the clock of the game (see Clock.register).
+     *
+     * @param claim - the claim.
+     * @return - the verdict of the claim (Verdict.IGNORED if the claim could not be checked).
+     * @throws InterruptedException - if the thread is interrupted while waiting.
+     */
+    private Claim.Verdict awaitVerdict(Claim claim) throws InterruptedException {
+        return env.clock.poll(timeout -> {
+            try {
+                return timeout == Long.MAX_VALUE ? claim.verdict.get() : claim.verdict.get(timeout, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                return null;
+            } catch (ExecutionException e) {
+                return Claim.Verdict.IGNORED;
+            }
+        }, Long.MAX_VALUE);
+    }
 
-        env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
+    static KeyPressBuffer.Overflow overflow(Env env) {
+        try {
+            return KeyPressBuffer.Overflow.valueOf(env.config.keyPressOverflow);
+        } catch (IllegalArgumentException e) {
+            env.logger.severe("invalid key press overflow policy: " + env.config.keyPressOverflow + ", dropping new key presses.");
+            return KeyPressBuffer.Overflow.DROP_NEWEST;
+        }
+    }
 
+    /**
+     * Starts the input of the player without a player thread (when config.singleWriterCore is set, the dealer applies
+     * the key presses): starts the AI thread of a computer player.
+     */
+    void startInput() {
+        table.playersStartLock.lock();
+        table.playersOrder.push(id); // to be terminated by the dealer
+        table.playersStartLock.unlock();
+        if (!human) createRandomKeysPresserThreadAndStart();
     }
 
     /**
      * Creates an additional thread for an AI (computer) player. The main loop of this thread repeatedly generates
-     * key presses. If the queue of key presses is full, the thread waits until it is not full.
+     * key presses. If the queue of key presses is full, the press is dropped (see KeyPressBuffer).
      */
     private void createRandomKeysPresserThreadAndStart() {
         // note: this is a very very smart AI (!)
-        randomKeysPresserThread = new Thread(() -> {
+        randomKeysPresserThread = GameThreads.start(() -> {
             env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " starting.");
-            while (!terminate) {
-                if (env.config.PauseAITime>0) {
+            env.clock.register(); // a virtual clock moves only while the AI waits on it
+            try {
+                while (!terminate) {
                     try {
-                        Thread.sleep(env.config.PauseAITime);
-                    } catch (InterruptedException e) {};
-                }
-                int randomSlot = (int) ((Math.random() * (env.config.tableSize)));
+                        long frozen = table.freezeRemainingMillis(id);
+                        if (frozen > 0)
+                            env.clock.sleep(frozen); // its key presses would be ignored anyway
+                        else if (env.config.PauseAITime > 0)
+                            env.clock.sleep(env.config.PauseAITime);
+                        else
+                            env.clock.pause(); // let other (virtual) threads run
+                    } catch (InterruptedException ignored) {
+                        continue; // terminated
+                    }
+                    int randomSlot = random.nextInt(env.config.tableSize);
 
-                keyPressed(randomSlot);
+                    if (!table.snapshot().isEmpty(randomSlot)) // only press keys of slots with cards
+                        keyPressed(randomSlot);
 
 
+                }
+            } finally {
+                env.clock.unregister();
             }
 
             env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
-        }, "computer-" + id);
-        randomKeysPresserThread.start();
+        }, "computer-" + id, env.config.virtualThreads);
     }
 
     /**
@@ -181,8 +245,10 @@ public class Player implements Runnable {
                 randomKeysPresserThread.join();
 
             }
-            playerThread.interrupt();
-            playerThread.join(); // wait for the player to stop
+            if (playerThread != null) { // no player thread when the dealer applies the key presses
+                playerThread.interrupt();
+                playerThread.join(); // wait for the player to stop
+            }
         } catch (InterruptedException ignored) {
         }
 
@@ -195,12 +261,12 @@ public class Player implements Runnable {
      */
     public void keyPressed(int slot) {
         // add the slot to queue
-        if (isPlayerCanRecieveKey & table.areAllCanRecieveKey & !table.emptySlots.contains(slot)) {
-            try {
-                    playerSlotsRequestsQ.put(slot);
-
-            } catch (InterruptedException ignored) {
-            }
+        int keyPress = table.keyPress(slot); // before the check: if the card is replaced after it, the press is stale
+        if (isPlayerCanRecieveKey & table.areAllCanRecieveKey & !table.isFrozen(id) & !table.snapshot().isEmpty(slot)) {
+            if (env.config.singleWriterCore)
+                dealer.keyPressed(id, keyPress);
+            else
+                playerSlotsRequestsQ.offer(keyPress); // never blocks (the press is dropped if too many are waiting)
         }
 
     }
@@ -217,23 +283,6 @@ public class Player implements Runnable {
         env.ui.setScore(id, ++score);
     }
 
-    /**
-     * Penalize a player and perform other related actions.
-     */
-    public void penalize() {
-        // check how long is the penalty
-        try {
-            for (int i = penaltyTime; i > 0; i = i - SECOND_MILLIS) {
-                env.ui.setFreeze(id, i);
-                Thread.sleep(SECOND_MILLIS);
-            }
-
-            env.ui.setFreeze(id, 0);
-        } catch (InterruptedException ignored) {
-        }
-
-    }
-
     public int score() {
         return score;
     }
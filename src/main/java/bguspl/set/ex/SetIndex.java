@@ -0,0 +1,113 @@
+package bguspl.set.ex;
+
+import bguspl.set.Util;
+
+/**
+ * An incremental index of the legal sets (of three cards) in a changing collection of cards.
+ * Adding or removing a card updates the number of sets in the collection and the number of sets each card is part
+ * of, in time linear in the size of the collection, so asking whether the collection has a set is O(1).
+ *
+ * Not thread safe: it is updated only by the dealer thread (through the table).
+ *
+ * @inv sets >= 0
+ * @inv setsPerCard[card] == 0 for every card that is not in the collection
+ */
+class SetIndex {
+
+    private final Util util;
+
+    /**
+     * The cards in the collection (the first size entries).
+     */
+    private final int[] cards;
+
+    /**
+     * 1 + the index of each card in cards (0 if the card is not in the collection).
+     */
+    private final int[] position;
+
+    private int size;
+
+    /**
+     * The number of sets each card is part of.
+     */
+    private final int[] setsPerCard;
+
+    /**
+     * The number of sets in the collection.
+     */
+    private int sets;
+
+    /**
+     * @param util     - used to compute the card completing a pair of cards to a set.
+     * @param deckSize - the number of cards in the deck.
+     */
+    SetIndex(Util util, int deckSize) {
+        this.util = util;
+        cards = new int[deckSize];
+        position = new int[deckSize];
+        setsPerCard = new int[deckSize];
+    }
+
+    /**
+     * Adds a card to the collection and counts the sets it completes.
+     *
+     * @param card - the card id.
+     * @pre - the card is not in the collection.
+     */
+    void add(int card) {
+        updateSets(card, 1);
+        cards[size] = card;
+        position[card] = ++size;
+    }
+
+    /**
+     * Removes a card from the collection and the sets it was part of.
+     *
+     * @param card - the card id.
+     * @pre - the card is in the collection.
+     */
+    void remove(int card) {
+        int index = position[card] - 1;
+        int last = cards[--size];
+        cards[index] = last;
+        position[last] = index + 1;
+        position[card] = 0;
+        updateSets(card, -1);
+    }
+
+    boolean contains(int card) {
+        return position[card] != 0;
+    }
+
+    /**
+     * @return - the number of sets in the collection.
+     */
+    int sets() {
+        return sets;
+    }
+
+    /**
+     * @param card - the card id.
+     * @return - the number of sets in the collection the card is part of.
+     */
+    int sets(int card) {
+        return setsPerCard[card];
+    }
+
+    /**
+     * Adds delta to the counters of every set formed by the card and two cards of the collection.
+     */
+    private void updateSets(int card, int delta) {
+        for (int i = 0; i < size; ++i) {
+            int other = cards[i];
+            int third = util.thirdCard(card, other);
+            if (third > other && contains(third)) { // each set is found from both of its other cards, count it once
+                sets += delta;
+                setsPerCard[card] += delta;
+                setsPerCard[other] += delta;
+                setsPerCard[third] += delta;
+            }
+        }
+    }
+}
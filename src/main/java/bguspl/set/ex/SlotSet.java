@@ -0,0 +1,100 @@
+package bguspl.set.ex;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A set of slots, kept as a bitset (slot s is in the set iff bit s % 64 of word s / 64 is set).
+ * Updates are atomic per slot and membership checks take no lock, so any thread can check a slot while the dealer
+ * updates the set.
+ */
+class SlotSet {
+
+    private final AtomicLongArray words;
+
+    /**
+     * @param slots - the number of slots on the table.
+     */
+    SlotSet(int slots) {
+        words = new AtomicLongArray((slots + Long.SIZE - 1) / Long.SIZE);
+    }
+
+    void add(int slot) {
+        long bit = 1L << slot;
+        int word = slot >>> 6;
+        for (long bits = words.get(word); (bits & bit) == 0; bits = words.get(word))
+            if (words.compareAndSet(word, bits, bits | bit)) return;
+    }
+
+    void remove(int slot) {
+        long bit = 1L << slot;
+        int word = slot >>> 6;
+        for (long bits = words.get(word); (bits & bit) != 0; bits = words.get(word))
+            if (words.compareAndSet(word, bits, bits & ~bit)) return;
+    }
+
+    boolean contains(int slot) {
+        return slot >= 0 && (slot >>> 6) < words.length() && (words.get(slot >>> 6) & (1L << slot)) != 0;
+    }
+
+    /**
+     * @return - the number of slots in the set.
+     */
+    int size() {
+        int size = 0;
+        for (int i = 0; i < words.length(); ++i)
+            size += Long.bitCount(words.get(i));
+        return size;
+    }
+
+    boolean isEmpty() {
+        for (int i = 0; i < words.length(); ++i)
+            if (words.get(i) != 0) return false;
+        return true;
+    }
+
+    /**
+     * @return - the slots in the set, in increasing order.
+     */
+    int[] toArray() {
+        int[] slots = new int[size()];
+        for (int i = 0, j = 0; i < words.length() && j < slots.length; ++i)
+            for (long bits = words.get(i); bits != 0 && j < slots.length; bits &= bits - 1)
+                slots[j++] = (i << 6) + Long.numberOfTrailingZeros(bits);
+        return slots;
+    }
+
+    /**
+     * @param slots - the number of slots on the table.
+     * @return - the slots (between 0 and slots - 1) not in the set, in increasing order.
+     */
+    int[] complementToArray(int slots) {
+        int[] complement = new int[slots];
+        int count = 0;
+        for (int i = 0; i < words.length(); ++i) {
+            int first = i << 6;
+            long mask = slots - first >= Long.SIZE ? -1L : (1L << (slots - first)) - 1; // the bits of real slots
+            for (long bits = ~words.get(i) & mask; bits != 0; bits &= bits - 1)
+                complement[count++] = first + Long.numberOfTrailingZeros(bits);
+        }
+        return count == slots ? complement : Arrays.copyOf(complement, count);
+    }
+
+    /**
+     * @param index - an index between 0 and size - 1.
+     * @return - the index-th smallest slot in the set (-1 if there are not enough slots).
+     */
+    int get(int index) {
+        for (int i = 0; i < words.length(); ++i) {
+            long bits = words.get(i);
+            int count = Long.bitCount(bits);
+            if (index < count) {
+                for (; index > 0; --index)
+                    bits &= bits - 1;
+                return (i << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            index -= count;
+        }
+        return -1;
+    }
+}
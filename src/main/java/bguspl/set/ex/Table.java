@@ -2,12 +2,18 @@ package bguspl.set.ex;
 
 import bguspl.set.Env;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Stack;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
-import java.util.stream.Collectors;
 
 /**
  * This class contains the data that is visible to the player.
@@ -22,64 +28,166 @@ public class Table {
     private final Env env;
 
     /**
-     * Mapping between a slot and the card placed in it (null if none).
+     * Mapping between a slot and the card placed in it (NO_CARD if none).
      */
-    protected final Integer[] slotToCard; // card per slot (if any)
+    protected final int[] slotToCard; // card per slot (if any)
 
     /**
-     * Mapping between a card and the slot it is in (null if none).
+     * Mapping between a card and the slot it is in (Dealer.IRRELEVANT_SLOT if none).
      */
-    protected final Integer[] cardToSlot; // slot per card (if any)
+    protected final int[] cardToSlot; // slot per card (if any)
 
-    protected Vector<Integer> deck;
+    protected IntPool deck;
 
-    protected Vector<Integer> emptySlots;
+    protected SlotSet emptySlots;
 
-    protected List<List<Integer>> tokensOnTable;
+    /**
+     * The tokens of each player (slot s has a token of the player iff bit s is set).
+     */
+    protected final AtomicLongArray tokensOnTable;
+
+    /**
+     * The number of times a card was put in or taken out of each slot (so a key press of a card that was taken out
+     * can be told apart from a key press of the card that replaced it, and from a key press of the empty slot).
+     */
+    private final AtomicIntegerArray slotGenerations;
+
+    protected final ReentrantLock allPlayersLock = new ReentrantLock(); // lock for all players
+
+    /**
+     * Signalled (with allPlayersLock held) when the dealer places cards on the table.
+     */
+    private final Condition cardsPlaced = allPlayersLock.newCondition();
 
-    protected Object allPlayersLock = new Object(); // lock for all players
+    /**
+     * True iff the dealer placed cards on the table since the game started (guarded by allPlayersLock).
+     */
+    private boolean areCardsPlaced;
 
-    protected boolean areAllCanRecieveKey = true;
+    protected volatile boolean areAllCanRecieveKey = true;
 
-    protected BlockingQueue<Integer> setsForDealer;
+    protected BlockingQueue<Claim> setsForDealer;
 
     protected Stack<Integer> playersOrder;
 
     protected ReentrantLock playersStartLock = new ReentrantLock(true);
 
-    protected List<Integer> tableCards;
+    /**
+     * The locks guarding the slots: slot s is guarded by slotLocks[s % SLOT_LOCK_STRIPES].
+     */
+    private final ReentrantLock[] slotLocks;
+
+    /**
+     * True iff only the dealer thread changes the cards and the tokens (config.singleWriterCore): then no slot lock is
+     * taken, the tokens are written without compare-and-set, and the claims are returned to the dealer instead of
+     * being queued (the other threads only read the table).
+     */
+    private final boolean singleWriter;
+
+    protected IntPool tableCards;
+
+    public static final int NO_CARD = -1;
+
+    /**
+     * The maximal number of slots on the table (the tokens of a player are kept in a long).
+     */
+    public static final int MAX_SLOTS = Long.SIZE;
+
+    /**
+     * The number of (low) bits of a key press that hold the slot (the other bits hold the generation of the slot).
+     */
+    public static final int SLOT_BITS = Integer.numberOfTrailingZeros(MAX_SLOTS);
+
+    /**
+     * The number of locks the slots are split between.
+     */
+    public static final int SLOT_LOCK_STRIPES = 16;
+
+    /**
+     * The sets among the cards that are still in the game (in the deck or on the table).
+     * Null if the sets are not of three cards.
+     */
+    private final SetIndex setsInGame;
+
+    /**
+     * The sets among the cards on the table (null if the sets are not of three cards).
+     */
+    private final SetIndex setsOnTable;
+
+    /**
+     * The latest snapshot of the cards on the table (replaced after every change of the cards, never after a change of
+     * the tokens: the tokens are read from tokensOnTable, which takes no table-wide lock and copies nothing).
+     */
+    private final AtomicReference<TableSnapshot> snapshot;
+
+    /**
+     * Finds the sets on the table in the background (and prints them if config.hints is set).
+     */
+    private final HintService hintService;
+
+    /**
+     * The freezes of the players.
+     */
+    private final FreezeTimer freezeTimer;
 
     /**
      * Constructor for testing.
      *
      * @param env        - the game environment objects.
-     * @param slotToCard - mapping between a slot and the card placed in it (null if none).
-     * @param cardToSlot - mapping between a card and the slot it is in (null if none).
+     * @param slotToCard - mapping between a slot and the card placed in it (NO_CARD if none).
+     * @param cardToSlot - mapping between a card and the slot it is in (Dealer.IRRELEVANT_SLOT if none).
      */
-    public Table(Env env, Integer[] slotToCard, Integer[] cardToSlot) {
+    public Table(Env env, int[] slotToCard, int[] cardToSlot) {
 
         this.env = env;
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
-        this.deck = new Vector<Integer>();
+        this.deck = new IntPool(env.config.deckSize);
         for (int i = 0; i < env.config.deckSize; i++) { // creating the deck
-            deck.add(i);
-        }
-        tokensOnTable = new ArrayList<>(env.config.players); // init tokens nested list
-        for (int i = 0; i < env.config.players; i++) {
-            tokensOnTable.add(new ArrayList<>());
+            if (cardToSlot[i] == Dealer.IRRELEVANT_SLOT)
+                deck.add(i);
         }
+        if (slotToCard.length > MAX_SLOTS)
+            throw new IllegalArgumentException("a table of " + slotToCard.length + " slots has more than " + MAX_SLOTS + " slots");
+        tokensOnTable = new AtomicLongArray(env.config.players); // no tokens on the table
+        slotGenerations = new AtomicIntegerArray(slotToCard.length);
+        singleWriter = env.config.singleWriterCore;
+        slotLocks = new ReentrantLock[Math.min(slotToCard.length, SLOT_LOCK_STRIPES)];
+        for (int i = 0; i < slotLocks.length; i++)
+            slotLocks[i] = new ReentrantLock();
 //        initiate which slots in table are empty
-        emptySlots = new Vector<Integer>();
+        emptySlots = new SlotSet(slotToCard.length);
         for (int i = 0; i < slotToCard.length; i++) {
-            emptySlots.add(i);
+            if (slotToCard[i] == NO_CARD)
+                emptySlots.add(i);
         }
         setsForDealer = new LinkedBlockingQueue<>(env.config.players);
         //init players threads stack
         playersOrder = new Stack<>();
 
         areAllCanRecieveKey = true;
-        tableCards = new LinkedList<Integer>();
+        tableCards = new IntPool(env.config.deckSize);
+        for (int card : slotToCard)
+            if (card != NO_CARD)
+                tableCards.add(card);
+
+        if (env.config.featureSize == Dealer.SET_SIZE) {
+            setsInGame = new SetIndex(env.util, env.config.deckSize);
+            setsOnTable = new SetIndex(env.util, env.config.deckSize);
+            for (int i = 0; i < deck.size(); i++)
+                setsInGame.add(deck.get(i));
+            for (int card : slotToCard)
+                if (card != NO_CARD) {
+                    setsInGame.add(card);
+                    setsOnTable.add(card);
+                }
+        } else {
+            setsInGame = null;
+            setsOnTable = null;
+        }
+        snapshot = new AtomicReference<>(TableSnapshot.of(slotToCard));
+        hintService = new HintService(env, this, env.config.hints);
+        freezeTimer = new FreezeTimer(env);
     }
 
     /**
@@ -89,20 +197,97 @@ public class Table {
      */
     public Table(Env env) {
 
-        this(env, new Integer[env.config.tableSize], new Integer[env.config.deckSize]);
+        this(env, emptyMapping(env.config.tableSize), emptyMapping(env.config.deckSize));
+    }
+
+    private static int[] emptyMapping(int size) {
+        int[] mapping = new int[size];
+        Arrays.fill(mapping, NO_CARD);
+        return mapping;
     }
 
     /**
      * This method prints all possible legal sets of cards that are currently on the table.
      */
     public void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
-            StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
-            List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
-            int[][] features = env.util.cardsToFeatures(set);
-            System.out.println(sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)));
-        });
+        TableSnapshot snapshot = snapshot();
+        HintService.Hints hints = hintService.hints();
+        if (hints.cardsEpoch != snapshot.cardsEpoch) // the cached hints are out of date
+            hints = hintService.find(snapshot);
+        hintService.print(hints);
+    }
+
+    /**
+     * @return - the latest hints found in the background (O(1), may be of an older version of the table than the
+     *           current one; always up to date only if config.hints is set).
+     */
+    HintService.Hints currentHints() {
+        return hintService.hints();
+    }
+
+    /**
+     * Stops the background work of the table (finding hints, displaying freezes).
+     */
+    public void shutdown() {
+        hintService.shutdown();
+        freezeTimer.shutdown();
+    }
+
+    /**
+     * Freezes a player: its key presses are ignored until the freeze is over. Returns immediately.
+     *
+     * @param playerId - the player to freeze.
+     * @param millis   - the number of milliseconds to freeze the player for (nothing happens if not positive).
+     */
+    public void freeze(int playerId, long millis) {
+        freezeTimer.freeze(playerId, millis);
+    }
+
+    /**
+     * @param playerId - the player.
+     * @return - true iff the player is frozen now (O(1), without blocking).
+     */
+    public boolean isFrozen(int playerId) {
+        return freezeTimer.isFrozen(playerId);
+    }
+
+    /**
+     * @param playerId - the player.
+     * @return - the number of milliseconds until the freeze of the player is over (0 if the player is not frozen).
+     */
+    public long freezeRemainingMillis(int playerId) {
+        return freezeTimer.remainingMillis(playerId);
+    }
+
+    /**
+     * Waits until the dealer places the first cards on the table (see signalCardsPlaced). Waits on a lock condition
+     * rather than a monitor, so a waiting virtual thread does not hold on to its carrier thread.
+     *
+     * @throws InterruptedException - if the thread is interrupted while waiting.
+     */
+    public void awaitCardsPlaced() throws InterruptedException {
+        allPlayersLock.lock();
+        try {
+            areAllCanRecieveKey = false;
+            while (!areCardsPlaced)
+                cardsPlaced.await();
+        } finally {
+            areAllCanRecieveKey = true;
+            allPlayersLock.unlock();
+        }
+    }
+
+    /**
+     * Wakes up the players waiting for the dealer to place cards on the table (see awaitCardsPlaced).
+     */
+    public void signalCardsPlaced() {
+        allPlayersLock.lock();
+        try {
+            areCardsPlaced = true;
+            cardsPlaced.signalAll();
+        } finally {
+            allPlayersLock.unlock();
+        }
     }
 
     /**
@@ -111,13 +296,67 @@ public class Table {
      * @return - the number of cards on the table.
      */
     public int countCards() {
+        TableSnapshot snapshot = snapshot();
         int cards = 0;
-        for (Integer card : slotToCard)
-            if (card != null)
+        for (int slot = 0; slot < snapshot.slots(); ++slot)
+            if (!snapshot.isEmpty(slot))
                 ++cards;
         return cards;
     }
 
+    /**
+     * @return - the latest snapshot of the cards on the table (a consistent view, taken without any lock; the tokens
+     *           are read with tokens).
+     */
+    public TableSnapshot snapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Checks if there is a legal set among the cards on the table.
+     *
+     * @return - true iff there is at least one set on the table.
+     */
+    public boolean hasSetOnTable() {
+        if (setsOnTable != null)
+            return setsOnTable.sets() > 0;
+        return env.util.setCursor(toList(tableCards)).next(new int[env.config.featureSize]);
+    }
+
+    /**
+     * Count the number of legal sets among the cards on the table.
+     *
+     * @return - the number of sets on the table.
+     */
+    public int countSetsOnTable() {
+        if (setsOnTable != null)
+            return setsOnTable.sets();
+        int[] cards = new int[tableCards.size()];
+        for (int i = 0; i < cards.length; i++)
+            cards[i] = tableCards.get(i);
+        return env.util.countSets(cards);
+    }
+
+    /**
+     * Checks if there is a legal set among the cards that are still in the game (in the deck or on the table).
+     *
+     * @return - true iff the game can go on.
+     */
+    public boolean hasSetInGame() {
+        if (setsInGame != null)
+            return setsInGame.sets() > 0;
+        List<Integer> cards = toList(deck);
+        cards.addAll(toList(tableCards));
+        return env.util.setCursor(cards).next(new int[env.config.featureSize]);
+    }
+
+    private static List<Integer> toList(IntPool pool) {
+        List<Integer> list = new ArrayList<>(pool.size());
+        for (int i = 0; i < pool.size(); i++)
+            list.add(pool.get(i));
+        return list;
+    }
+
     /**
      * Places a card on the table in a grid slot.
      *
@@ -125,18 +364,46 @@ public class Table {
      * @param slot - the slot in which the card should be placed.
      * @post - the card placed is on the table, in the assigned slot.
      */
-    public synchronized void placeCard(int card, int slot) {
+    public void placeCard(int card, int slot) {
         try {
-            Thread.sleep(env.config.tableDelayMillis);
+            env.clock.sleep(env.config.tableDelayMillis);
         } catch (InterruptedException ignored) {
         }
 
-        cardToSlot[card] = slot;
-        slotToCard[slot] = card;
-        Integer integerCard = card;
-        tableCards.add(integerCard);
+        int locked = lockSlot(slot);
+        try {
+            putCard(card, slot);
+            publishCards();
+            env.ui.placeCard(card, slot);
+        } finally {
+            unlockSlots(locked);
+        }
+    }
+
+    /**
+     * Places cards on the table at once: waits for the table delay once, locks all the slots, places all the cards
+     * and updates the ui once.
+     *
+     * @param cards - the card ids to place.
+     * @param slots - the slots in which the cards should be placed (cards[i] in slots[i]).
+     * @post - the cards placed are on the table, in the assigned slots.
+     */
+    public void placeCards(int[] cards, int[] slots) {
+        if (slots.length == 0) return;
+        try {
+            env.clock.sleep(env.config.tableDelayMillis);
+        } catch (InterruptedException ignored) {
+        }
 
-        env.ui.placeCard(card, slot);
+        int locked = lockSlots(slots);
+        try {
+            for (int i = 0; i < slots.length; i++)
+                putCard(cards[i], slots[i]);
+            publishCards();
+            env.ui.placeCards(cards, slots);
+        } finally {
+            unlockSlots(locked);
+        }
     }
 
     /**
@@ -146,64 +413,164 @@ public class Table {
      */
     public void removeCard(int slot, boolean removeForever) {
         try {
-            Thread.sleep(env.config.tableDelayMillis);
+            env.clock.sleep(env.config.tableDelayMillis);
         } catch (InterruptedException ignored) {
         }
 
+        int locked = lockSlot(slot);
+        try {
+            takeCard(slot, removeForever);
+            publishCards();
+            env.ui.removeTokens(slot);
+            env.ui.removeCard(slot);
+        } finally {
+            unlockSlots(locked);
+        }
+    }
+
+    /**
+     * Removes cards from the table at once: waits for the table delay once, locks all the slots, removes all the
+     * cards (and the tokens on them) and updates the ui once (the cards and the tokens together).
+     *
+     * @param slots - the slots from which to remove the cards.
+     */
+    public void removeCards(int[] slots, boolean removeForever) {
+        if (slots.length == 0) return;
+        try {
+            env.clock.sleep(env.config.tableDelayMillis);
+        } catch (InterruptedException ignored) {
+        }
+
+        int locked = lockSlots(slots);
+        try {
+            for (int slot : slots)
+                takeCard(slot, removeForever);
+            publishCards();
+            env.ui.removeCards(slots);
+        } finally {
+            unlockSlots(locked);
+        }
+    }
+
+    /**
+     * Puts a card in a slot.
+     *
+     * @pre - the lock of the slot is held.
+     */
+    private void putCard(int card, int slot) {
+        cardToSlot[card] = slot;
+        slotToCard[slot] = card;
+        slotGenerations.incrementAndGet(slot); // key presses of the empty slot are stale now.
+        emptySlots.remove(slot); // the slot can get tokens now
+        tableCards.add(card);
+        if (setsOnTable != null)
+            setsOnTable.add(card);
+    }
+
+    /**
+     * Takes the card (and the tokens) out of a slot. The ui is not updated.
+     *
+     * @pre - the lock of the slot is held.
+     */
+    private void takeCard(int slot, boolean removeForever) {
         emptySlots.add(slot); // add the slots that will be removed to the empty slots
-        Integer slotCard = slotToCard[slot];
+        clearTokens(slot); // no token can be placed on the slot anymore
+        int slotCard = slotToCard[slot];
         tableCards.remove(slotCard);
-
-        if (removeForever)
-            cardToSlot[slotToCard[slot]] = Dealer.IRRELEVANT_SLOT; // make the card not available anymore.
-        else {
-            deck.add(slotToCard[slot]);
-            cardToSlot[slotToCard[slot]] = null; // make the card available again
+        if (setsOnTable != null) {
+            setsOnTable.remove(slotCard);
+            if (removeForever)
+                setsInGame.remove(slotCard);
         }
-        slotToCard[slot] = null; // the slot is empty now.
 
-        // ui
-        env.ui.removeCard(slot);
+        if (!removeForever)
+            deck.add(slotCard); // make the card available again
+        cardToSlot[slotCard] = Dealer.IRRELEVANT_SLOT; // the card is not on the table anymore.
+        slotToCard[slot] = NO_CARD; // the slot is empty now.
+        slotGenerations.incrementAndGet(slot); // key presses of the card are stale now.
+    }
+
+    /**
+     * @param slot - the slot the key of which was pressed.
+     * @return - the key press of the slot: the slot and its generation (see slotOfKeyPress). The key press stays
+     *           current until the card in the slot is taken out (or, for an empty slot, until a card is put in it), so
+     *           the generation should be read before checking the card the key press is meant for.
+     */
+    public int keyPress(int slot) {
+        return ((slotGenerations.get(slot) << SLOT_BITS) | slot) & Integer.MAX_VALUE; // never negative
+    }
+
+    /**
+     * @param keyPress - a key press (see keyPress).
+     * @return - the slot the key of which was pressed.
+     */
+    public static int slotOfKeyPress(int keyPress) {
+        return keyPress & (MAX_SLOTS - 1);
     }
 
     /**
-     * Places a player token on a grid slot.
+     * Toggles a player token on a grid slot: removes the token if the player has one there, and places one otherwise
+     * (if the player has less than Dealer.SET_SIZE tokens). Only the lock of the slot is taken, so the dealer can
+     * replace cards in other slots meanwhile. The player's tokens are updated with a single compare-and-set, and the
+     * player that places the last token of a set is the one that claims it.
      *
      * @param playerId - the player the token belongs to.
      * @param slot     - the slot on which to place the token.
+     * @return - true iff the token completed a set that was sent to the dealer (i.e. the player should wait).
      */
-    public synchronized boolean placeTokenReturnIsPlayerShouldSleep(int playerId, int slot) { // changed to boolean
+    public boolean placeTokenReturnIsPlayerShouldSleep(int playerId, int slot) {
 
-        if (slot == Dealer.IRRELEVANT_SLOT | emptySlots.contains(slot)) { // if the slot he holds is not relevant anymore
+        if (slot == Dealer.IRRELEVANT_SLOT) // if the slot he holds is not relevant anymore
             return false;
-        } else {
-            if (tokensOnTable.get(playerId).contains(slot)) { // there's a token on this slot --> needs to be removed
-                removeToken(playerId, slot);
-                return false;
-
-            } else { // I need to place the token
 
-                if (tokensOnTable.get(playerId).size() >= Dealer.SET_SIZE) // if i already have 3, and want to add another token - dont do anything.
-                    return false;
+        return placeTokenOfKeyPress(playerId, keyPress(slot)) != null;
+    }
 
-                tokensOnTable.get(playerId).add(slot); // add the slot to player's tokens
-                env.ui.placeToken(playerId, slot);
+    /**
+     * Toggles a player token on the slot of a key press (see placeTokenReturnIsPlayerShouldSleep), unless the key
+     * press is stale (the card that was in the slot when the key was pressed was taken out since).
+     *
+     * @param playerId - the player the token belongs to.
+     * @param keyPress - the key press (see keyPress).
+     * @return - the claim sent to the dealer if the token completed a set (the player should wait for its verdict),
+     *           null otherwise. When there is a single writer the claim is not queued: the dealer checks it itself.
+     */
+    public Claim placeTokenOfKeyPress(int playerId, int keyPress) {
 
-                if (tokensOnTable.get(playerId).size() < Dealer.SET_SIZE) { // case where there are 1 or two tokens now.
-                    return false;
+        int slot = slotOfKeyPress(keyPress);
+        int locked = lockSlot(slot);
+        try {
+            if (emptySlots.contains(slot) || keyPress != keyPress(slot)) // the card pressed is not on the table anymore
+                return null;
+
+            long bit = 1L << slot;
+            while (true) {
+                long tokens = tokensOnTable.get(playerId);
+                if ((tokens & bit) != 0) { // there's a token on this slot --> needs to be removed
+                    if (removeToken(playerId, slot))
+                        return null;
+                    continue;
                 }
-                // add the set to the dealer's queue
-                if (tokensOnTable.get(playerId).size() == Dealer.SET_SIZE) {
-                    env.logger.log(Level.WARNING, "Player " + playerId + " claimed a set.");
-                    setsForDealer.add(playerId);
 
-                    return true;
+                if (Long.bitCount(tokens) >= Dealer.SET_SIZE) // if i already have 3, and want to add another token - dont do anything.
+                    return null;
+                if (replaceTokens(playerId, tokens, tokens | bit)) {
+                    env.ui.placeToken(playerId, slot);
+                    if (Long.bitCount(tokens | bit) < Dealer.SET_SIZE) // case where there are 1 or two tokens now.
+                        return null;
+                    break;
                 }
             }
-
-
+        } finally {
+            unlockSlots(locked);
         }
-        return false;
+
+        // add the set to the dealer's queue (the dealer itself applied the key press when there is a single writer)
+        env.logger.log(Level.WARNING, "Player " + playerId + " claimed a set.");
+        Claim claim = new Claim(playerId);
+        if (!singleWriter)
+            setsForDealer.add(claim);
+        return claim;
     }
 
     /**
@@ -214,10 +581,133 @@ public class Table {
      * @return - true iff a token was successfully removed.
      */
     public boolean removeToken(int playerId, int slot) {
-        // if there is a token in the player's tokens - remove it
-        Integer intSlot = slot;
-        env.ui.removeToken(playerId, slot);
-        return tokensOnTable.get(playerId).remove(intSlot); // returns true iff removed successfully
+        long bit = 1L << slot;
+        for (long tokens = tokensOnTable.get(playerId); (tokens & bit) != 0; tokens = tokensOnTable.get(playerId))
+            if (replaceTokens(playerId, tokens, tokens & ~bit)) {
+                env.ui.removeToken(playerId, slot);
+                return true;
+            }
+        return false;
+    }
+
+    /**
+     * Removes the tokens of all players from a grid slot.
+     *
+     * @param slot - the slot from which to remove the tokens.
+     */
+    public void removeTokens(int slot) {
+        int locked = lockSlot(slot);
+        try {
+            clearTokens(slot);
+            env.ui.removeTokens(slot);
+        } finally {
+            unlockSlots(locked);
+        }
+    }
+
+    /**
+     * Clears the tokens of all players from a grid slot, without updating the ui.
+     *
+     * @pre - the lock of the slot is held.
+     */
+    private void clearTokens(int slot) {
+        long bit = 1L << slot;
+        for (int playerId = 0; playerId < tokensOnTable.length(); playerId++)
+            for (long tokens = tokensOnTable.get(playerId); (tokens & bit) != 0; tokens = tokensOnTable.get(playerId))
+                if (replaceTokens(playerId, tokens, tokens & ~bit))
+                    break;
+    }
+
+    /**
+     * Removes all the tokens of a player.
+     *
+     * @param playerId - the player the tokens belong to.
+     */
+    public void removePlayerTokens(int playerId) {
+        long tokens = tokensOnTable.getAndSet(playerId, 0);
+        for (; tokens != 0; tokens &= tokens - 1)
+            env.ui.removeToken(playerId, Long.numberOfTrailingZeros(tokens));
+    }
+
+    /**
+     * Publishes a new snapshot with the current cards.
+     *
+     * @pre - the locks of all the slots that were changed are held.
+     */
+    private void publishCards() {
+        snapshot.updateAndGet(previous -> previous.withCards(slotToCard));
+        if (env.config.hints)
+            hintService.refresh();
+    }
+
+    /**
+     * Replaces the tokens of a player, unless they were changed meanwhile (a plain write when there is a single
+     * writer: nothing else changes them).
+     *
+     * @param tokens  - the tokens of the player the change is based on.
+     * @param updated - the new tokens of the player.
+     * @return - true iff the tokens were replaced.
+     */
+    private boolean replaceTokens(int playerId, long tokens, long updated) {
+        if (!singleWriter)
+            return tokensOnTable.compareAndSet(playerId, tokens, updated);
+        tokensOnTable.set(playerId, updated);
+        return true;
+    }
+
+    /**
+     * Locks the lock guarding a slot (its card, whether it is empty and the tokens on it).
+     *
+     * @return - the locks that were locked (see lockSlots).
+     */
+    private int lockSlot(int slot) {
+        if (singleWriter)
+            return 0;
+        int lock = slot % slotLocks.length;
+        slotLocks[lock].lock();
+        return 1 << lock;
+    }
 
+    /**
+     * Locks the locks of all the given slots (in a fixed order, so two threads locking slots never deadlock). No
+     * lock is taken when there is a single writer.
+     *
+     * @return - the locks that were locked (lock i was locked iff bit i is set).
+     */
+    private int lockSlots(int[] slots) {
+        if (singleWriter)
+            return 0;
+        int locks = 0;
+        for (int slot : slots)
+            locks |= 1 << (slot % slotLocks.length);
+        for (int i = 0; i < slotLocks.length; i++)
+            if ((locks & (1 << i)) != 0)
+                slotLocks[i].lock();
+        return locks;
+    }
+
+    private void unlockSlots(int locks) {
+        for (int i = slotLocks.length - 1; i >= 0; i--)
+            if ((locks & (1 << i)) != 0)
+                slotLocks[i].unlock();
+    }
+
+    /**
+     * @param playerId - the player the tokens belong to.
+     * @return - the slots with a token of the player (slot s has a token iff bit s is set). O(1), without any lock.
+     */
+    public long tokens(int playerId) {
+        return tokensOnTable.get(playerId);
+    }
+
+    /**
+     * @param tokens - slots with tokens (see tokens).
+     * @return - the slots, in increasing order.
+     */
+    public static int[] tokensToSlots(long tokens) {
+        int[] slots = new int[Long.bitCount(tokens)];
+        for (int i = 0; tokens != 0; i++, tokens &= tokens - 1)
+            slots[i] = Long.numberOfTrailingZeros(tokens);
+        return slots;
     }
-}
\ No newline at end of file
+}
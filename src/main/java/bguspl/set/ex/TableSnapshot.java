@@ -0,0 +1,92 @@
+package bguspl.set.ex;
+
+/**
+ * An immutable view of the cards on the table at some point in time: the card in every slot.
+ * The table publishes a new snapshot after every change of the cards, so readers get a consistent view of the cards
+ * without taking any lock. The tokens change with every key press, so they are not part of the snapshot (see
+ * Table.tokens).
+ *
+ * @inv cardsEpoch >= 0
+ */
+public final class TableSnapshot {
+
+    /**
+     * The number of changes to the cards on the table before this snapshot (increases with every new snapshot).
+     */
+    public final long cardsEpoch;
+
+    /**
+     * The card in every slot (Table.NO_CARD if none). Never modified.
+     */
+    private final int[] slotToCard;
+
+    private TableSnapshot(long cardsEpoch, int[] slotToCard) {
+        this.cardsEpoch = cardsEpoch;
+        this.slotToCard = slotToCard;
+    }
+
+    /**
+     * @param slotToCard - the card in every slot (copied).
+     * @return - the snapshot of a table with these cards.
+     */
+    static TableSnapshot of(int[] slotToCard) {
+        return new TableSnapshot(0, slotToCard.clone());
+    }
+
+    /**
+     * @param slotToCard - the new card in every slot (copied).
+     * @return - the next snapshot, with the given cards.
+     */
+    TableSnapshot withCards(int[] slotToCard) {
+        return new TableSnapshot(cardsEpoch + 1, slotToCard.clone());
+    }
+
+    /**
+     * @return - the number of slots on the table.
+     */
+    public int slots() {
+        return slotToCard.length;
+    }
+
+    /**
+     * @param slot - the slot.
+     * @return - the card in the slot (Table.NO_CARD if none).
+     */
+    public int card(int slot) {
+        return slotToCard[slot];
+    }
+
+    /**
+     * @param slot - the slot.
+     * @return - true iff there is no card in the slot.
+     */
+    public boolean isEmpty(int slot) {
+        return slotToCard[slot] == Table.NO_CARD;
+    }
+
+    /**
+     * @param card - the card id.
+     * @return - the slot the card is in (Dealer.IRRELEVANT_SLOT if none).
+     */
+    public int slotOf(int card) {
+        for (int slot = 0; slot < slotToCard.length; slot++)
+            if (slotToCard[slot] == card)
+                return slot;
+        return Dealer.IRRELEVANT_SLOT;
+    }
+
+    /**
+     * @return - the cards on the table (a copy).
+     */
+    public int[] cards() {
+        int count = 0;
+        for (int card : slotToCard)
+            if (card != Table.NO_CARD)
+                count++;
+        int[] cards = new int[count];
+        for (int i = 0, slot = 0; slot < slotToCard.length; slot++)
+            if (slotToCard[slot] != Table.NO_CARD)
+                cards[i++] = slotToCard[slot];
+        return cards;
+    }
+}
@@ -0,0 +1,222 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares UtilImpl with a brute force reference: the combination based search the game started with, which tries
+ * every combination of cards in the deck in lexicographic order.
+ */
+class UtilImplTest {
+
+    private static final long SEED = 1337;
+    private static final int TRIALS = 25;
+    private static final int[] FEATURE_SIZES = {3, 4, 5};
+    private static final int[] PARALLELISMS = {1, 4};
+
+    /**
+     * The largest random deck for each feature size (so the brute force reference stays fast).
+     */
+    private static final int[] MAX_DECK = {0, 0, 0, 81, 30, 22};
+
+    private static final Logger logger = Logger.getLogger("UtilImplTest");
+
+    private static Config config(int featureSize, int parallelism, boolean completeLastCard) {
+        Properties properties = new Properties();
+        properties.setProperty("LogLevel", "OFF");
+        properties.setProperty("FeatureSize", String.valueOf(featureSize));
+        properties.setProperty("FeatureCount", "4");
+        properties.setProperty("FindSetsParallelism", String.valueOf(parallelism));
+        properties.setProperty("FindSetsParallelThreshold", "0"); // search in parallel whenever parallelism > 1
+        properties.setProperty("CompleteLastCard", String.valueOf(completeLastCard));
+        properties.setProperty("HumanPlayers", "0");
+        return new Config(logger, properties);
+    }
+
+    /**
+     * Runs a check with every configuration: feature sizes 3, 4 and 5, a sequential and a parallel search, with and
+     * without completing the last card.
+     */
+    private static void forEachConfig(Check check) {
+        for (int featureSize : FEATURE_SIZES)
+            for (int parallelism : PARALLELISMS)
+                for (boolean complete : new boolean[]{true, false}) {
+                    Config config = config(featureSize, parallelism, complete);
+                    Random random = new Random(SEED + featureSize);
+                    for (int trial = 0; trial < TRIALS; trial++)
+                        check.run(config, new UtilImpl(config), new Reference(config), randomDeck(config, random), random,
+                                "featureSize=" + featureSize + " parallelism=" + parallelism + " complete=" + complete
+                                        + " trial=" + trial);
+                }
+    }
+
+    @FunctionalInterface
+    private interface Check {
+        void run(Config config, Util util, Reference reference, List<Integer> deck, Random random, String name);
+    }
+
+    private static List<Integer> randomDeck(Config config, Random random) {
+        List<Integer> deck = new ArrayList<>();
+        for (int card = 0; card < config.deckSize; card++)
+            deck.add(card);
+        Collections.shuffle(deck, random);
+        int size = random.nextInt(Math.min(config.deckSize, MAX_DECK[config.featureSize]) + 1);
+        return new ArrayList<>(deck.subList(0, size));
+    }
+
+    private static List<String> asStrings(List<int[]> sets) {
+        return sets.stream().map(Arrays::toString).collect(Collectors.toList());
+    }
+
+    @Test
+    void findSets_MatchesReference() {
+        forEachConfig((config, util, reference, deck, random, name) -> {
+            List<int[]> expected = reference.findSets(deck, Integer.MAX_VALUE);
+            assertEquals(asStrings(expected), asStrings(util.findSets(deck, Integer.MAX_VALUE)), name);
+
+            int count = 1 + random.nextInt(expected.size() + 1); // up to one more than the sets in the deck
+            assertEquals(asStrings(reference.findSets(deck, count)), asStrings(util.findSets(deck, count)),
+                    name + " count=" + count);
+        });
+    }
+
+    @Test
+    void testSet_MatchesReference() {
+        forEachConfig((config, util, reference, deck, random, name) -> {
+            for (int[] set : reference.findSets(deck, Integer.MAX_VALUE)) {
+                int[] reversed = new int[set.length]; // not sorted
+                for (int i = 0; i < set.length; i++)
+                    reversed[i] = set[set.length - 1 - i];
+                assertTrue(util.testSet(reversed), name + " set=" + Arrays.toString(set));
+            }
+            for (int i = 0; i < 50; i++) { // random selections of distinct cards, most of them are not sets
+                List<Integer> cards = new ArrayList<>();
+                for (int card = 0; card < config.deckSize; card++)
+                    cards.add(card);
+                Collections.shuffle(cards, random);
+                int[] selection = cards.subList(0, config.featureSize).stream().mapToInt(Integer::intValue).toArray();
+                assertEquals(reference.testSet(selection), util.testSet(selection),
+                        name + " cards=" + Arrays.toString(selection));
+            }
+        });
+    }
+
+    @Test
+    void countSets_MatchesReference() {
+        forEachConfig((config, util, reference, deck, random, name) -> {
+            List<int[]> expected = reference.findSets(deck, Integer.MAX_VALUE);
+            int[] cards = deck.stream().mapToInt(Integer::intValue).toArray();
+            long[] cardBits = new long[(config.deckSize + Long.SIZE - 1) / Long.SIZE];
+            for (int card : cards)
+                cardBits[card >>> 6] |= 1L << card;
+            int[] expectedPerCard = new int[config.deckSize];
+            for (int[] set : expected)
+                for (int card : set)
+                    expectedPerCard[card]++;
+
+            assertEquals(expected.size(), util.countSets(cards), name);
+            assertEquals(expected.size(), util.countSets(cardBits), name);
+            int[] perCard = new int[config.deckSize];
+            assertEquals(expected.size(), util.countSetsPerCard(cardBits, perCard), name);
+            assertArrayEquals(expectedPerCard, perCard, name);
+
+            int words = cardBits.length; // a bitmask without the empty words at its end
+            while (words > 0 && cardBits[words - 1] == 0)
+                words--;
+            long[] shortBits = Arrays.copyOf(cardBits, words);
+            assertEquals(expected.size(), util.countSets(shortBits), name + " (short bitmask)");
+            assertEquals(expected.size(), util.countSetsPerCard(shortBits, perCard), name + " (short bitmask)");
+            assertArrayEquals(expectedPerCard, perCard, name + " (short bitmask)");
+        });
+    }
+
+    @Test
+    void setCursor_MatchesReference() {
+        forEachConfig((config, util, reference, deck, random, name) -> {
+            List<String> expected = asStrings(reference.findSets(deck, Integer.MAX_VALUE));
+
+            List<int[]> found = new ArrayList<>();
+            SetCursor cursor = util.setCursor(deck);
+            for (int[] set = new int[config.featureSize]; cursor.next(set); )
+                found.add(set.clone());
+            assertEquals(expected, asStrings(found), name);
+
+            List<String> streamed = asStrings(util.streamSets(deck, true).map(int[]::clone).collect(Collectors.toList()));
+            streamed.sort(Comparator.naturalOrder());
+            List<String> sorted = new ArrayList<>(expected);
+            sorted.sort(Comparator.naturalOrder());
+            assertEquals(sorted, streamed, name + " (parallel stream)");
+        });
+    }
+
+    /**
+     * The brute force reference: the search and the test of sets the game started with.
+     */
+    private static class Reference {
+
+        private final Config config;
+
+        Reference(Config config) {
+            this.config = config;
+        }
+
+        int[] features(int card) {
+            int[] features = new int[config.featureCount];
+            for (int i = config.featureCount - 1; i >= 0; --i) {
+                features[i] = card % config.featureSize;
+                card /= config.featureSize;
+            }
+            return features;
+        }
+
+        boolean testSet(int[] cards) {
+            int[][] features = Arrays.stream(cards).mapToObj(this::features).toArray(int[][]::new);
+            for (int i = 0; i < config.featureCount; ++i) {
+                boolean same = true, different = true;
+                for (int j = 1; j < features.length; ++j)
+                    if (features[0][i] != features[j][i])
+                        same = false;
+                for (int j = 0; j < features.length; ++j)
+                    for (int k = j + 1; k < features.length; ++k)
+                        if (features[j][i] == features[k][i])
+                            different = false;
+                if (same == different) return false;
+            }
+            return true;
+        }
+
+        List<int[]> findSets(List<Integer> deck, int count) {
+            List<int[]> sets = new LinkedList<>();
+            int n = deck.size();
+            int r = config.featureSize;
+            if (n < r) return sets;
+            int[] combination = new int[r];
+            for (int i = 0; i < r; ++i)
+                combination[i] = i;
+            while (combination[r - 1] < n) {
+                int[] cards = Arrays.stream(combination).map(deck::get).sorted().toArray();
+                if (testSet(cards)) {
+                    sets.add(cards);
+                    if (sets.size() >= count) return sets;
+                }
+                int t = r - 1;
+                while (t != 0 && combination[t] == n - r + t) --t;
+                combination[t]++;
+                for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+            }
+            return sets;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the virtual clock: it moves only when every registered thread waits on it, and a game on it takes a sane
+ * number of rounds (as many as on the real clock, not a reshuffle whenever the dealer finds nothing to do).
+ */
+class VirtualClockTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    @Test
+    void sleepMovesTheClockToItsEnd() throws InterruptedException {
+        VirtualClock clock = new VirtualClock();
+        clock.sleep(1000);
+        assertEquals(1000, clock.currentTimeMillis());
+        clock.sleep(0);
+        assertEquals(1000, clock.currentTimeMillis());
+    }
+
+    @Test
+    void pollOfNothingWaitsForTheTimeToPass() throws InterruptedException {
+        VirtualClock clock = new VirtualClock();
+        assertNull(clock.poll(new LinkedBlockingQueue<Integer>(), 500));
+        assertEquals(500, clock.currentTimeMillis());
+    }
+
+    @Test
+    void pollOfSomethingDoesNotMoveTheClock() throws InterruptedException {
+        VirtualClock clock = new VirtualClock();
+        LinkedBlockingQueue<Integer> queue = new LinkedBlockingQueue<>();
+        queue.add(7);
+        assertEquals(7, clock.poll(queue, 500));
+        assertEquals(0, clock.currentTimeMillis());
+    }
+
+    @Test
+    void advanceMovesTheClock() {
+        VirtualClock clock = new VirtualClock(100);
+        clock.advance(50);
+        clock.advanceTo(120); // in the past
+        assertEquals(150, clock.currentTimeMillis());
+    }
+
+    @Test
+    void clockDoesNotMoveWhileARegisteredThreadRuns() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            VirtualClock clock = new VirtualClock();
+            LinkedBlockingQueue<Integer> queue = new LinkedBlockingQueue<>();
+            CountDownLatch registered = new CountDownLatch(1);
+            AtomicBoolean working = new AtomicBoolean(true);
+            Thread worker = new Thread(() -> {
+                clock.register();
+                try {
+                    registered.countDown();
+                    while (working.get())
+                        Thread.onSpinWait(); // runs without waiting on the clock
+                    queue.add(1);
+                } finally {
+                    clock.unregister();
+                }
+            });
+            worker.start();
+            registered.await();
+
+            Thread poller = new Thread(() -> {
+                try {
+                    assertEquals(1, clock.poll(queue, 1000));
+                } catch (InterruptedException ignored) {
+                }
+            });
+            poller.start();
+            Thread.sleep(100); // real time, in which the poller finds nothing again and again
+            assertEquals(0, clock.currentTimeMillis());
+
+            working.set(false);
+            worker.join();
+            poller.join();
+            assertEquals(0, clock.currentTimeMillis()); // the poller got the element in time
+        });
+    }
+
+    @Test
+    void pollGetsWhatAnotherRegisteredThreadGaveBeforeTheClockMoves() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            VirtualClock clock = new VirtualClock();
+            LinkedBlockingQueue<Integer> queue = new LinkedBlockingQueue<>();
+            CountDownLatch registered = new CountDownLatch(2);
+            long[] got = new long[2];
+            Thread consumer = new Thread(() -> {
+                clock.register();
+                try {
+                    registered.countDown();
+                    registered.await();
+                    for (int i = 0; i < got.length; i++) {
+                        assertEquals(i, clock.poll(queue, 1000));
+                        got[i] = clock.currentTimeMillis();
+                    }
+                } catch (InterruptedException ignored) {
+                } finally {
+                    clock.unregister();
+                }
+            });
+            Thread producer = new Thread(() -> {
+                clock.register();
+                try {
+                    registered.countDown();
+                    registered.await();
+                    for (int i = 0; i < got.length; i++) {
+                        queue.add(i); // then waits on the clock, without waking the consumer up itself
+                        clock.sleep(100);
+                    }
+                } catch (InterruptedException ignored) {
+                } finally {
+                    clock.unregister();
+                }
+            });
+            consumer.start();
+            producer.start();
+            consumer.join();
+            producer.join();
+            assertArrayEquals(new long[]{0, 100}, got);
+        });
+    }
+
+    @Test
+    void registeredThreadsWaitTogether() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            VirtualClock clock = new VirtualClock();
+            long[] woke = new long[2];
+            CountDownLatch registered = new CountDownLatch(woke.length);
+            Thread[] threads = new Thread[woke.length];
+            for (int i = 0; i < threads.length; i++) {
+                int id = i;
+                threads[i] = new Thread(() -> {
+                    clock.register();
+                    try {
+                        registered.countDown();
+                        registered.await(); // the clock would move for the first thread alone
+                        for (int step = 0; step < 100; step++)
+                            clock.sleep(10 * (id + 1));
+                        woke[id] = clock.currentTimeMillis();
+                    } catch (InterruptedException ignored) {
+                    } finally {
+                        clock.unregister();
+                    }
+                });
+            }
+            for (Thread thread : threads)
+                thread.start();
+            for (Thread thread : threads)
+                thread.join();
+            assertEquals(1000, woke[0]);
+            assertEquals(2000, woke[1]);
+        });
+    }
+
+    @Test
+    void gameTakesASaneNumberOfRounds() {
+        Logger logger = Logger.getLogger("VirtualClockTest");
+        Properties properties = new Properties();
+        properties.setProperty("LogLevel", "OFF");
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("ComputerPlayers", "4");
+        properties.setProperty("Hints", "False");
+        properties.setProperty("TurnTimeoutSeconds", "5");
+        properties.setProperty("PointFreezeSeconds", "0");
+        properties.setProperty("PenaltyFreezeSeconds", "0");
+        properties.setProperty("TableDelaySeconds", "0");
+        properties.setProperty("EndGamePauseSeconds", "0");
+        properties.setProperty("RandomSeed", "1");
+        Config config = new Config(logger, properties);
+        VirtualClock clock = new VirtualClock();
+        Env env = new Env(logger, config, new HeadlessUserInterface(), new UtilImpl(config),
+                new RandomSourceImpl(config.randomSeed), clock);
+        Game game = new Game(env);
+
+        assertTimeoutPreemptively(TIMEOUT, game::play);
+
+        assertFalse(game.terminated());
+        assertTrue(game.rounds() >= 1 && game.rounds() <= 50, game.rounds() + " rounds");
+        assertTrue(game.claimsChecked() > 0, "no set was claimed");
+    }
+}
@@ -0,0 +1,233 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.HeadlessUserInterface;
+import bguspl.set.UserInterface;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stress tests of the table: players place tokens while the dealer replaces the cards, and the table must stay
+ * consistent (the slotToCard / cardToSlot mapping, the empty slots, and no token on an empty slot).
+ */
+class TableTest {
+
+    private static final int PLAYERS = 8;
+    private static final int DEALER_ROUNDS = 5000;
+
+    private static Env env() {
+        return env(new HeadlessUserInterface(), false);
+    }
+
+    private static Env env(UserInterface ui, boolean singleWriterCore) {
+        Logger logger = Logger.getLogger("TableTest");
+        Properties properties = new Properties();
+        properties.setProperty("LogLevel", "OFF");
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("ComputerPlayers", String.valueOf(PLAYERS));
+        properties.setProperty("TableDelaySeconds", "0");
+        properties.setProperty("Hints", "False");
+        properties.setProperty("RandomSeed", "1");
+        properties.setProperty("SingleWriterCore", String.valueOf(singleWriterCore));
+        Config config = new Config(logger, properties);
+        return new Env(logger, config, ui, new UtilImpl(config));
+    }
+
+    /**
+     * Checks the invariants of the table. Called by the dealer thread (the only one changing the cards).
+     */
+    private static void assertConsistent(Table table, int players) {
+        for (int slot = 0; slot < table.slotToCard.length; slot++) {
+            int card = table.slotToCard[slot];
+            assertEquals(card == Table.NO_CARD, table.emptySlots.contains(slot), "empty slot " + slot);
+            if (card != Table.NO_CARD)
+                assertEquals(slot, table.cardToSlot[card], "slot of card " + card);
+            else
+                for (int player = 0; player < players; player++)
+                    assertEquals(0, table.tokens(player) & (1L << slot), "token of player " + player + " on empty slot " + slot);
+        }
+        for (int card = 0; card < table.cardToSlot.length; card++) {
+            int slot = table.cardToSlot[card];
+            if (slot != Dealer.IRRELEVANT_SLOT)
+                assertEquals(card, table.slotToCard[slot], "card in slot " + slot);
+        }
+    }
+
+    @Test
+    void placeTokens_WhileCardsAreReplaced_TableStaysConsistent() throws InterruptedException {
+        Env env = env();
+        Table table = new Table(env);
+        int slots = env.config.tableSize;
+        Random random = new Random(1);
+        table.placeCards(drawCards(table, random, slots), allSlots(slots));
+
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong tokenPresses = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> players = new ArrayList<>();
+        for (int player = 0; player < PLAYERS; player++) {
+            int playerId = player;
+            Thread thread = new Thread(() -> {
+                Random playerRandom = new Random(100 + playerId);
+                try {
+                    while (!stop.get()) {
+                        int slot = playerRandom.nextInt(slots);
+                        Claim claim = table.placeTokenOfKeyPress(playerId, table.keyPress(slot));
+                        tokenPresses.incrementAndGet();
+                        if (claim != null) { // no dealer checks the claims: give the tokens back
+                            table.setsForDealer.remove(claim);
+                            table.removePlayerTokens(playerId);
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }, "player-" + playerId);
+            players.add(thread);
+            thread.start();
+        }
+
+        try {
+            for (int round = 0; round < DEALER_ROUNDS && failure.get() == null; round++) {
+                int[] taken = randomCardSlots(table, random); // remove some cards, then fill the empty slots
+                table.removeCards(taken, false);
+                assertConsistent(table, PLAYERS);
+                int[] empty = table.emptySlots.toArray();
+                table.placeCards(drawCards(table, random, empty.length), empty);
+                assertConsistent(table, PLAYERS);
+            }
+        } finally {
+            stop.set(true);
+            for (Thread thread : players)
+                thread.join();
+            table.shutdown();
+        }
+        assertNull(failure.get(), () -> "a player thread failed: " + failure.get());
+        assertConsistent(table, PLAYERS);
+        assertTrue(tokenPresses.get() > 0, "the players pressed no keys");
+    }
+
+    @Test
+    void placeToken_OfAKeyPressBeforeTheCardWasReplaced_IsDropped() {
+        Env env = env();
+        Table table = new Table(env);
+        Random random = new Random(2);
+        table.placeCards(drawCards(table, random, 1), new int[]{0});
+
+        int oldCard = table.keyPress(0); // pressed on the card, which is replaced before the press is applied
+        int emptySlot = table.keyPress(1); // pressed on the empty slot, which gets a card before the press is applied
+        table.removeCards(new int[]{0}, false);
+        table.placeCards(drawCards(table, random, 2), new int[]{0, 1});
+
+        assertNull(table.placeTokenOfKeyPress(0, oldCard));
+        assertNull(table.placeTokenOfKeyPress(0, emptySlot));
+        assertEquals(0, table.tokens(0), "a stale key press placed a token");
+        assertNull(table.placeTokenOfKeyPress(0, table.keyPress(0)));
+        assertEquals(1L, table.tokens(0), "a current key press placed no token");
+        table.shutdown();
+    }
+
+    @Test
+    void removeCards_WithTokens_UpdatesTheUiOnce() {
+        List<String> updates = new ArrayList<>();
+        Env env = env(new HeadlessUserInterface() {
+            @Override
+            public void removeCard(int slot) {
+                updates.add("removeCard");
+            }
+
+            @Override
+            public void removeCards(int[] slots) {
+                updates.add("removeCards");
+            }
+
+            @Override
+            public void removeTokens(int slot) {
+                updates.add("removeTokens");
+            }
+
+            @Override
+            public void removeToken(int player, int slot) {
+                updates.add("removeToken");
+            }
+        }, false);
+        Table table = new Table(env);
+        int slots = env.config.tableSize;
+        table.placeCards(drawCards(table, new Random(3), slots), allSlots(slots));
+        for (int player = 0; player < 2; player++)
+            for (int slot = 0; slot < 2; slot++)
+                table.placeTokenOfKeyPress(player, table.keyPress(slot));
+
+        table.removeCards(new int[]{0, 1, 2}, false);
+
+        assertEquals(List.of("removeCards"), updates);
+        assertEquals(0, table.tokens(0));
+        assertEquals(0, table.tokens(1));
+        table.shutdown();
+    }
+
+    @Test
+    void placeToken_WithASingleWriter_ReturnsTheClaimWithoutQueuingIt() {
+        Env env = env(new HeadlessUserInterface(), true);
+        Table table = new Table(env);
+        List<Integer> deck = new ArrayList<>();
+        for (int card = 0; card < env.config.deckSize; card++)
+            deck.add(card);
+        int[] set = env.util.findSets(deck, 1).get(0);
+        for (int card : set)
+            table.deck.remove(card);
+        table.placeCards(set, new int[]{0, 1, 2});
+
+        assertNull(table.placeTokenOfKeyPress(0, table.keyPress(0)));
+        assertNull(table.placeTokenOfKeyPress(0, table.keyPress(1)));
+        Claim claim = table.placeTokenOfKeyPress(0, table.keyPress(2));
+
+        assertNotNull(claim);
+        assertEquals(0b111L, table.tokens(0));
+        assertTrue(table.setsForDealer.isEmpty(), "the claim was queued for the dealer");
+        table.removeCards(new int[]{1}, true);
+        assertEquals(0b101L, table.tokens(0));
+        table.shutdown();
+    }
+
+    private static int[] allSlots(int slots) {
+        int[] all = new int[slots];
+        for (int slot = 0; slot < slots; slot++)
+            all[slot] = slot;
+        return all;
+    }
+
+    /**
+     * @return - a random non empty selection of the slots with cards.
+     */
+    private static int[] randomCardSlots(Table table, Random random) {
+        int[] cards = table.emptySlots.complementToArray(table.slotToCard.length);
+        int count = 1 + random.nextInt(Math.max(1, Math.min(cards.length, 3)));
+        int[] taken = new int[Math.min(count, cards.length)];
+        for (int i = 0; i < taken.length; i++) { // a partial Fisher-Yates shuffle
+            int j = i + random.nextInt(cards.length - i);
+            taken[i] = cards[j];
+            cards[j] = cards[i];
+        }
+        return taken;
+    }
+
+    private static int[] drawCards(Table table, Random random, int count) {
+        int[] cards = new int[count];
+        for (int i = 0; i < count; i++)
+            cards[i] = table.deck.removeAt(random.nextInt(table.deck.size()));
+        return cards;
+    }
+}